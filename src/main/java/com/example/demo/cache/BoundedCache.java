@@ -0,0 +1,296 @@
+package com.example.demo.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * In-process cache bounded by entry count and time to live, with hit, miss
+ * and eviction counters.
+ * <p>
+ * Entries are spread over independently locked LRU segments so readers of
+ * different keys rarely contend. Values loaded through
+ * {@link #get(Object, Function)} are dropped instead of cached when the
+ * segment was invalidated while the load was running, so an invalidation
+ * cannot be undone by a slow reader putting back the old value. Concurrent
+ * misses on the same key share a single load.
+ */
+public class BoundedCache<K, V> {
+
+	private static final int DEFAULT_SEGMENTS = 16;
+
+	private final String name;
+
+	private final int maxSize;
+
+	private final long ttlNanos;
+
+	private final LongSupplier ticker;
+
+	private final Segment<K, V>[] segments;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private static class Entry<V> {
+		private final V value;
+		private final long expiresAt;
+
+		private Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private static class Segment<K, V> {
+		// access-ordered so iteration starts at the least recently used entry
+		private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+		// loads in progress, joined by readers that miss on the same key
+		private final Map<K, CompletableFuture<V>> loading = new HashMap<>();
+		private final int maxSize;
+		private long generation;
+
+		private Segment(int maxSize) {
+			this.maxSize = maxSize;
+		}
+	}
+
+	/**
+	 * @param ttl time to live of an entry after it is written, 0 for none
+	 */
+	public BoundedCache(String name, int maxSize, long ttl, TimeUnit unit) {
+		this(name, maxSize, ttl, unit, System::nanoTime);
+	}
+
+	BoundedCache(String name, int maxSize, long ttl, TimeUnit unit, LongSupplier ticker) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.ttlNanos = ttl <= 0 ? 0 : unit.toNanos(ttl);
+		this.ticker = ticker;
+		int count = Math.max(1, Math.min(DEFAULT_SEGMENTS, maxSize / DEFAULT_SEGMENTS));
+		@SuppressWarnings("unchecked")
+		Segment<K, V>[] segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+		this.segments = segments;
+		for(int i = 0; i < count; i++) {
+			// spread the remainder so the segments add up to maxSize
+			this.segments[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0));
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public V getIfPresent(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized(segment) {
+			Entry<V> entry = segment.entries.get(key);
+			if(entry != null) {
+				if(!isExpired(entry)) {
+					hits.incrementAndGet();
+					return entry.value;
+				}
+				segment.entries.remove(key);
+				evictions.incrementAndGet();
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Returns the cached value, or loads, caches and returns it. A null from the
+	 * loader is returned but not cached. A reader that misses while another
+	 * thread loads the same key waits for that load instead of starting its
+	 * own, and gets its result or exception.
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		Segment<K, V> segment = segmentFor(key);
+		long generation;
+		CompletableFuture<V> running;
+		CompletableFuture<V> load = new CompletableFuture<>();
+		synchronized(segment) {
+			Entry<V> entry = segment.entries.get(key);
+			if(entry != null && !isExpired(entry)) {
+				hits.incrementAndGet();
+				return entry.value;
+			}
+			misses.incrementAndGet();
+			running = segment.loading.putIfAbsent(key, load);
+			generation = segment.generation;
+		}
+		if(running != null) {
+			return await(running);
+		}
+		V value;
+		try {
+			value = loader.apply(key);
+		} catch(RuntimeException | Error ex) {
+			synchronized(segment) {
+				segment.loading.remove(key, load);
+			}
+			load.completeExceptionally(ex);
+			throw ex;
+		}
+		synchronized(segment) {
+			segment.loading.remove(key, load);
+			if(value != null && segment.generation == generation) {
+				putLocked(segment, key, value, expiryFromNow());
+			}
+		}
+		load.complete(value);
+		return value;
+	}
+
+	public void put(K key, V value) {
+		put(key, value, expiryFromNow());
+	}
+
+	/**
+	 * Caches the value until the given {@link System#nanoTime()} deadline, or
+	 * the cache's own time to live if that comes first.
+	 */
+	public void putUntil(K key, V value, long expiresAtNanos) {
+		long expiry = expiryFromNow();
+		put(key, value, expiry == Long.MAX_VALUE ? expiresAtNanos : Math.min(expiry, expiresAtNanos));
+	}
+
+	public void invalidate(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized(segment) {
+			segment.entries.remove(key);
+			// later readers must not join a load that may return the old value
+			segment.loading.remove(key);
+			segment.generation++;
+		}
+	}
+
+	public void invalidateAll() {
+		for(Segment<K, V> segment : segments) {
+			synchronized(segment) {
+				segment.entries.clear();
+				segment.loading.clear();
+				segment.generation++;
+			}
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long size() {
+		long size = 0;
+		for(Segment<K, V> segment : segments) {
+			synchronized(segment) {
+				size += segment.entries.size();
+			}
+		}
+		return size;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	/**
+	 * Publishes the counters under the usual cache meter names, tagged with
+	 * this cache's name.
+	 */
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("cache.gets", hits, AtomicLong::doubleValue)
+				.tag("cache", name).tag("result", "hit")
+				.description("Cache lookups that found a live entry")
+				.register(registry);
+		FunctionCounter.builder("cache.gets", misses, AtomicLong::doubleValue)
+				.tag("cache", name).tag("result", "miss")
+				.description("Cache lookups that found no live entry")
+				.register(registry);
+		FunctionCounter.builder("cache.evictions", evictions, AtomicLong::doubleValue)
+				.tag("cache", name)
+				.description("Entries dropped for size or age")
+				.register(registry);
+		Gauge.builder("cache.size", this, cache -> cache.size())
+				.tag("cache", name)
+				.description("Entries currently cached")
+				.register(registry);
+	}
+
+	private void put(K key, V value, long expiresAt) {
+		Segment<K, V> segment = segmentFor(key);
+		synchronized(segment) {
+			putLocked(segment, key, value, expiresAt);
+		}
+	}
+
+	private void putLocked(Segment<K, V> segment, K key, V value, long expiresAt) {
+		segment.entries.put(key, new Entry<>(value, expiresAt));
+		Iterator<Map.Entry<K, Entry<V>>> eldest = segment.entries.entrySet().iterator();
+		while(segment.entries.size() > segment.maxSize && eldest.hasNext()) {
+			eldest.next();
+			eldest.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static <V> V await(CompletableFuture<V> load) {
+		try {
+			return load.get();
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a cache load", ex);
+		} catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new CompletionException(cause);
+		}
+	}
+
+	private long expiryFromNow() {
+		return ttlNanos == 0 ? Long.MAX_VALUE : ticker.getAsLong() + ttlNanos;
+	}
+
+	private boolean isExpired(Entry<V> entry) {
+		return entry.expiresAt != Long.MAX_VALUE && ticker.getAsLong() - entry.expiresAt >= 0;
+	}
+
+	private Segment<K, V> segmentFor(K key) {
+		int h = key == null ? 0 : key.hashCode();
+		h ^= h >>> 16;
+		return segments[(h & 0x7fffffff) % segments.length];
+	}
+}
@@ -0,0 +1,31 @@
+package com.example.demo.cart;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+
+/**
+ * Strong ETags for carts derived from their content rather than the row
+ * version, so a live write-behind cart and its database copy agree once they
+ * hold the same lines.
+ */
+public final class CartETags {
+
+	private CartETags() {
+	}
+
+	public static String of(Cart cart) {
+		// lines are summed so the tag does not depend on map iteration order
+		long hash = mix(cart.getTotalCents());
+		for(CartLine line : cart.getLines()) {
+			hash += mix(mix(line.getItemId() == null ? 0 : line.getItemId()) + line.getQuantity());
+		}
+		return "\"cart-" + cart.getId() + "-" + Long.toHexString(hash) + "\"";
+	}
+
+	private static long mix(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		h *= 0xBF58476D1CE4E5B9L;
+		return h ^ (h >>> 29);
+	}
+}
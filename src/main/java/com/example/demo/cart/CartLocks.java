@@ -0,0 +1,68 @@
+package com.example.demo.cart;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fixed set of locks striped by cart id. Serializes updates to the same cart
+ * on this node so they rarely reach the database as optimistic lock conflicts,
+ * without keeping a lock object per cart.
+ */
+@Component
+public class CartLocks {
+
+	private final Lock[] stripes;
+
+	private final int mask;
+
+	public CartLocks(@Value("${cart.lock-stripes:64}") int stripes) {
+		int size = 1;
+		while(size < stripes) {
+			size <<= 1;
+		}
+		this.stripes = new Lock[size];
+		for(int i = 0; i < size; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		this.mask = size - 1;
+	}
+
+	public Lock lockFor(Long cartId) {
+		return stripes[stripeOf(cartId)];
+	}
+
+	/**
+	 * Distinct locks covering the given carts, in stripe order. Acquiring them
+	 * in this order keeps callers that lock several carts from deadlocking.
+	 */
+	public List<Lock> locksFor(Collection<Long> cartIds) {
+		TreeSet<Integer> indexes = new TreeSet<>();
+		for(Long cartId : cartIds) {
+			indexes.add(stripeOf(cartId));
+		}
+		List<Lock> locks = new ArrayList<>(indexes.size());
+		for(int index : indexes) {
+			locks.add(stripes[index]);
+		}
+		return locks;
+	}
+
+	public int size() {
+		return stripes.length;
+	}
+
+	private int stripeOf(Long cartId) {
+		if(cartId == null) {
+			return 0;
+		}
+		long h = cartId * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+}
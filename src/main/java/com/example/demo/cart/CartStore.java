@@ -0,0 +1,359 @@
+package com.example.demo.cart;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.example.demo.model.persistence.repositories.CartRepository;
+
+/**
+ * Where cart mutations are written. By default every save goes straight to
+ * the {@link CartRepository}. With {@code cart.write-behind.enabled=true} live
+ * carts are kept in a bounded in-memory store instead and dirty carts are
+ * written in batches on a timer, when they are evicted, before an order reads
+ * them and on shutdown.
+ * <p>
+ * Write-behind assumes requests for a cart are routed to one node; a cart
+ * that was changed elsewhere in the meantime fails its version check on flush
+ * and is dropped from the store so the next request reads the database copy.
+ * <p>
+ * Callers must hold {@link CartLocks#lockFor(Long)} for the cart while using
+ * {@link #checkout(Long)} and {@link #save(Cart)}, and take the lock before
+ * the cart is read so that same-cart updates on this node see each other.
+ */
+@Component
+public class CartStore {
+
+	private static final Logger log = LoggerFactory.getLogger(CartStore.class);
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	@Autowired
+	private CartLocks cartLocks;
+
+	@Autowired(required = false)
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${cart.write-behind.enabled:false}")
+	private boolean writeBehind;
+
+	@Value("${cart.write-behind.max-carts:10000}")
+	private int maxCarts;
+
+	@Value("${cart.write-behind.flush-batch-size:100}")
+	private int flushBatchSize;
+
+	// access-ordered so the first entry is the least recently used cart
+	private final LinkedHashMap<Long, Entry> carts = new LinkedHashMap<>(16, 0.75f, true);
+
+	// dirty carts pushed out of the store that have not been written yet
+	private final Map<Long, Cart> evicted = new ConcurrentHashMap<>();
+
+	private static class Entry {
+		private Cart cart;
+		private boolean dirty;
+
+		private Entry(Cart cart) {
+			this.cart = cart;
+		}
+	}
+
+	public boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+	/**
+	 * Returns the cart instance to mutate, read after the caller took the
+	 * cart's lock: in write-behind mode the live copy held by the store,
+	 * otherwise the current database row. Null if there is no such cart.
+	 */
+	public Cart checkout(Long cartId) {
+		if(writeBehind) {
+			synchronized(carts) {
+				Entry entry = carts.get(cartId);
+				if(entry != null) {
+					return entry.cart;
+				}
+			}
+		}
+		Cart loaded = cartRepository.findById(cartId).orElse(null);
+		return loaded == null ? null : checkout(loaded);
+	}
+
+	/**
+	 * Returns the cart instance to mutate: the one just loaded from the
+	 * database, or in write-behind mode the live copy held by the store.
+	 */
+	public Cart checkout(Cart loaded) {
+		if(!writeBehind) {
+			return loaded;
+		}
+		List<Entry> overflow;
+		Cart live;
+		synchronized(carts) {
+			Entry entry = carts.get(loaded.getId());
+			if(entry == null) {
+				Cart pending = evicted.remove(loaded.getId());
+				if(pending != null) {
+					entry = new Entry(pending);
+					entry.dirty = true;
+				} else {
+					initialize(loaded);
+					entityManager.detach(loaded);
+					entry = new Entry(loaded);
+				}
+				carts.put(loaded.getId(), entry);
+			}
+			live = entry.cart;
+			overflow = removeOverflow();
+		}
+		for(Entry entry : overflow) {
+			flushEvicted(entry.cart);
+		}
+		return live;
+	}
+
+	public void save(Cart cart) {
+		if(!writeBehind) {
+			cartRepository.save(cart);
+			return;
+		}
+		synchronized(carts) {
+			Entry entry = carts.get(cart.getId());
+			if(entry != null && entry.cart == cart) {
+				entry.dirty = true;
+				return;
+			}
+		}
+		// not tracked any more, e.g. evicted by a concurrent checkout
+		persist(Collections.singletonList(cart));
+	}
+
+	/**
+	 * Writes any pending changes for the cart and returns the instance that
+	 * reflects them. Used before the cart is read for an order.
+	 */
+	public Cart flush(Cart loaded) {
+		if(!writeBehind) {
+			return loaded;
+		}
+		Lock lock = cartLocks.lockFor(loaded.getId());
+		lock.lock();
+		try {
+			Cart pending;
+			synchronized(carts) {
+				Entry entry = carts.get(loaded.getId());
+				pending = entry != null && entry.dirty ? entry.cart : evicted.get(loaded.getId());
+			}
+			if(pending == null) {
+				return loaded;
+			}
+			List<Cart> saved = persist(Collections.singletonList(pending));
+			return saved.isEmpty() ? loaded : saved.get(0);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${cart.write-behind.flush-interval-ms:1000}")
+	public void flushDirty() {
+		if(!writeBehind) {
+			return;
+		}
+		List<Long> ids = new ArrayList<>(evicted.keySet());
+		synchronized(carts) {
+			for(Map.Entry<Long, Entry> entry : carts.entrySet()) {
+				if(entry.getValue().dirty) {
+					ids.add(entry.getKey());
+				}
+			}
+		}
+		for(int from = 0; from < ids.size(); from += flushBatchSize) {
+			flushBatch(ids.subList(from, Math.min(ids.size(), from + flushBatchSize)));
+		}
+	}
+
+	@PreDestroy
+	public void flushAll() {
+		if(writeBehind) {
+			log.info("Flushing dirty carts before shutdown");
+			flushDirty();
+		}
+	}
+
+	public int size() {
+		synchronized(carts) {
+			return carts.size();
+		}
+	}
+
+	private void flushBatch(List<Long> ids) {
+		List<Lock> locks = cartLocks.locksFor(ids);
+		for(Lock lock : locks) {
+			lock.lock();
+		}
+		try {
+			List<Cart> pending = new ArrayList<>();
+			synchronized(carts) {
+				for(Long id : ids) {
+					Entry entry = carts.get(id);
+					if(entry != null && entry.dirty) {
+						pending.add(entry.cart);
+					} else if(evicted.containsKey(id)) {
+						pending.add(evicted.get(id));
+					}
+				}
+			}
+			if(!pending.isEmpty()) {
+				persist(pending);
+			}
+		} finally {
+			for(Lock lock : locks) {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void flushEvicted(Cart cart) {
+		Lock lock = cartLocks.lockFor(cart.getId());
+		if(!lock.tryLock()) {
+			// someone holding the stripe may still be using the cart; the timer writes it
+			return;
+		}
+		try {
+			if(evicted.get(cart.getId()) == cart) {
+				persist(Collections.singletonList(cart));
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Drops least recently used carts beyond the bound. Dirty ones stay
+	 * reachable through {@link #evicted} until they are written, so a checkout
+	 * in the meantime picks up the pending changes instead of the database row.
+	 */
+	private List<Entry> removeOverflow() {
+		List<Entry> overflow = new ArrayList<>();
+		Iterator<Map.Entry<Long, Entry>> eldest = carts.entrySet().iterator();
+		while(carts.size() > maxCarts && eldest.hasNext()) {
+			Map.Entry<Long, Entry> entry = eldest.next();
+			eldest.remove();
+			if(entry.getValue().dirty) {
+				evicted.put(entry.getKey(), entry.getValue().cart);
+				overflow.add(entry.getValue());
+			}
+		}
+		return overflow;
+	}
+
+	/**
+	 * Saves the carts in one transaction, falling back to one transaction per
+	 * cart if the batch hits a version conflict. Saved carts replace the store
+	 * entries since merging assigns ids to new lines and bumps the version.
+	 */
+	private List<Cart> persist(List<Cart> pending) {
+		try {
+			List<Cart> saved = saveAll(pending);
+			replace(pending, saved);
+			return saved;
+		} catch(OptimisticLockingFailureException ex) {
+			if(pending.size() == 1) {
+				Cart cart = pending.get(0);
+				log.warn("Cart " + cart.getId() + " was changed by another node, dropping in-memory changes");
+				drop(cart);
+				return Collections.emptyList();
+			}
+			List<Cart> saved = new ArrayList<>();
+			for(Cart cart : pending) {
+				saved.addAll(persist(Collections.singletonList(cart)));
+			}
+			return saved;
+		}
+	}
+
+	/**
+	 * Saves the carts and detaches the merged instances. A flush for an order
+	 * runs inside the request's open entity manager, which would otherwise
+	 * keep managing the cart the store now shares; a later change to it by
+	 * another request would then be written by this request's next flush,
+	 * behind the store's back, and fail the store's own version check.
+	 */
+	private List<Cart> saveAll(List<Cart> pending) {
+		if(transactionManager == null) {
+			return cartRepository.saveAll(pending);
+		}
+		List<Cart> saved = new TransactionTemplate(transactionManager).execute(status -> {
+			List<Cart> merged = cartRepository.saveAll(pending);
+			for(Cart cart : merged) {
+				initialize(cart);
+			}
+			return merged;
+		});
+		for(Cart cart : saved) {
+			entityManager.detach(cart);
+		}
+		return saved;
+	}
+
+	private void replace(List<Cart> pending, List<Cart> saved) {
+		synchronized(carts) {
+			for(int i = 0; i < pending.size(); i++) {
+				Cart cart = pending.get(i);
+				evicted.remove(cart.getId(), cart);
+				Entry entry = carts.get(cart.getId());
+				if(entry != null && entry.cart == cart) {
+					entry.cart = saved.get(i);
+					entry.dirty = false;
+				}
+			}
+		}
+	}
+
+	private void drop(Cart cart) {
+		synchronized(carts) {
+			evicted.remove(cart.getId(), cart);
+			Entry entry = carts.get(cart.getId());
+			if(entry != null && entry.cart == cart) {
+				carts.remove(cart.getId());
+			}
+		}
+	}
+
+	/**
+	 * Loads everything a detached cart needs to be mutated and serialized.
+	 */
+	private static void initialize(Cart cart) {
+		Hibernate.initialize(cart.getUser());
+		for(CartLine line : cart.getLines()) {
+			Hibernate.initialize(line.getItem());
+		}
+	}
+}
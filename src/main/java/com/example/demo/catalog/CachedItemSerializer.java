@@ -0,0 +1,30 @@
+package com.example.demo.catalog;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.example.demo.model.persistence.Item;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Writes an item by copying its cached JSON. Spring's Jackson setup creates
+ * serializers as beans, so the cache is injected; a plain ObjectMapper falls
+ * back to serializing the item normally.
+ */
+public class CachedItemSerializer extends JsonSerializer<Item> {
+
+	@Autowired(required = false)
+	private ItemJsonCache itemJsonCache;
+
+	@Override
+	public void serialize(Item item, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		if(itemJsonCache == null || item.getId() == null) {
+			serializers.findValueSerializer(Item.class).serialize(item, gen, serializers);
+			return;
+		}
+		gen.writeRawValue(itemJsonCache.json(item));
+	}
+}
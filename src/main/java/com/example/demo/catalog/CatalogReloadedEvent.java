@@ -0,0 +1,22 @@
+package com.example.demo.catalog;
+
+/**
+ * Published after items were written in bulk, bypassing JPA and therefore
+ * {@link ItemChangedEvent}. Anything derived from the catalog must be
+ * rebuilt from the database.
+ */
+public class CatalogReloadedEvent {
+
+	private final long itemCount;
+
+	public CatalogReloadedEvent(long itemCount) {
+		this.itemCount = itemCount;
+	}
+
+	/**
+	 * Number of items written by the bulk operation.
+	 */
+	public long getItemCount() {
+		return itemCount;
+	}
+}
@@ -0,0 +1,351 @@
+package com.example.demo.catalog;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+
+/**
+ * Binary copy of the item catalog on local disk, used to warm the
+ * {@link ItemCache} before the first request so a restarted node does not
+ * send its initial item reads to the database.
+ * <p>
+ * Layout, big-endian:
+ * <pre>
+ * int magic "ITMS", int format version, long written-at millis
+ * per item: long id, long version, long price in cents,
+ *           int length + UTF-8 name, int length + UTF-8 description
+ * long item count, long max id, long sum of versions   (the fingerprint)
+ * long CRC32 of everything above
+ * </pre>
+ * The file is memory-mapped and checked against its CRC and format version
+ * when the application starts. Entries are then decoded one at a time
+ * straight into the cache, up to its capacity; the rest are only walked to
+ * check the entry count, so warming never holds more items on the heap than
+ * the cache can keep. Once the database is available the
+ * fingerprint is compared with the live catalog and the warmed entries are
+ * dropped if they differ. Snapshots are written on a timer, only when the
+ * catalog fingerprint changed, to a temporary file that is then moved over
+ * the old one so a reader never sees a partial file.
+ */
+@Component
+public class CatalogSnapshot {
+
+	private static final Logger log = LoggerFactory.getLogger(CatalogSnapshot.class);
+
+	static final int MAGIC = 0x49544d53;
+
+	static final int FORMAT_VERSION = 1;
+
+	private static final int HEADER_BYTES = 4 + 4 + 8;
+
+	private static final int FOOTER_BYTES = 8 * 3 + 8;
+
+	private static final String FINGERPRINT_SQL =
+			"select count(*), coalesce(max(id), 0), coalesce(sum(version), 0) from item";
+
+	@Autowired
+	private ItemCache itemCache;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${catalog.snapshot.enabled:false}")
+	private boolean enabled;
+
+	@Value("${catalog.snapshot.path:catalog/items.snapshot}")
+	private String path;
+
+	private volatile Fingerprint loaded;
+
+	private volatile Fingerprint written;
+
+	/**
+	 * Count, highest id and version sum of the catalog. Any insert, update or
+	 * delete through JPA or the importer changes at least one of them.
+	 */
+	static final class Fingerprint {
+		private final long count;
+		private final long maxId;
+		private final long versionSum;
+
+		Fingerprint(long count, long maxId, long versionSum) {
+			this.count = count;
+			this.maxId = maxId;
+			this.versionSum = versionSum;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Fingerprint)) {
+				return false;
+			}
+			Fingerprint other = (Fingerprint) obj;
+			return count == other.count && maxId == other.maxId && versionSum == other.versionSum;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(count) * 31 * 31 + Long.hashCode(maxId) * 31 + Long.hashCode(versionSum);
+		}
+
+		@Override
+		public String toString() {
+			return count + " items, max id " + maxId + ", version sum " + versionSum;
+		}
+	}
+
+	@PostConstruct
+	public void warm() {
+		Path file = Paths.get(path);
+		if(!enabled || !Files.isRegularFile(file)) {
+			return;
+		}
+		long start = System.nanoTime();
+		int limit = itemCache.getByIdCache().getMaxSize();
+		try {
+			loaded = read(file, limit, itemCache::put);
+			log.info("Warmed item cache with " + Math.min(loaded.count, limit) + " of " + loaded.count
+					+ " items from " + file + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+		} catch(IOException | RuntimeException ex) {
+			// entries before a bad one may already be in the cache
+			itemCache.invalidateAll();
+			log.warn("Ignoring unreadable catalog snapshot " + file + ": " + ex.getMessage());
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void verify() {
+		Fingerprint snapshot = loaded;
+		if(snapshot == null) {
+			return;
+		}
+		Fingerprint live = fingerprint();
+		if(snapshot.equals(live)) {
+			written = snapshot;
+			log.info("Catalog snapshot matches the database (" + live + ")");
+		} else {
+			itemCache.invalidateAll();
+			log.warn("Catalog snapshot (" + snapshot + ") is out of date (" + live + "), dropped it");
+		}
+		loaded = null;
+	}
+
+	@Scheduled(initialDelayString = "${catalog.snapshot.interval-ms:300000}",
+			fixedDelayString = "${catalog.snapshot.interval-ms:300000}")
+	public void writeIfChanged() {
+		if(!enabled) {
+			return;
+		}
+		if(fingerprint().equals(written)) {
+			return;
+		}
+		try {
+			write(Paths.get(path));
+		} catch(IOException | RuntimeException ex) {
+			log.error("Could not write catalog snapshot to " + path, ex);
+		}
+	}
+
+	/**
+	 * Writes the current catalog to the file, replacing it atomically.
+	 */
+	public void write(Path file) throws IOException {
+		long start = System.nanoTime();
+		Path dir = file.toAbsolutePath().getParent();
+		Files.createDirectories(dir);
+		Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+		try {
+			Fingerprint fingerprint;
+			try(OutputStream out = Files.newOutputStream(tmp)) {
+				fingerprint = new TransactionTemplate(transactionManager).execute(status -> {
+					try {
+						return writeTo(out);
+					} catch(IOException ex) {
+						throw new SnapshotException(ex);
+					}
+				});
+			} catch(SnapshotException ex) {
+				throw (IOException) ex.getCause();
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			written = fingerprint;
+			log.info("Wrote catalog snapshot of " + fingerprint + " to " + file + " in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private Fingerprint writeTo(OutputStream file) throws IOException {
+		CRC32 crc = new CRC32();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeLong(System.currentTimeMillis());
+		long count = 0;
+		long maxId = 0;
+		long versionSum = 0;
+		try(Stream<Item> items = itemRepository.streamAllOrderById()) {
+			Iterator<Item> it = items.iterator();
+			while(it.hasNext()) {
+				Item item = it.next();
+				long version = item.getVersion() == null ? 0 : item.getVersion();
+				out.writeLong(item.getId());
+				out.writeLong(version);
+				out.writeLong(item.getPriceCents());
+				writeString(out, item.getName());
+				writeString(out, item.getDescription());
+				count++;
+				maxId = Math.max(maxId, item.getId());
+				versionSum += version;
+				entityManager.detach(item);
+			}
+		}
+		out.writeLong(count);
+		out.writeLong(maxId);
+		out.writeLong(versionSum);
+		out.flush();
+		// the checksum itself is written past the checked stream
+		new DataOutputStream(file).writeLong(crc.getValue());
+		return new Fingerprint(count, maxId, versionSum);
+	}
+
+	/**
+	 * Hands the first {@code limit} items of a snapshot to {@code items} as
+	 * they are decoded, skips the others and returns the fingerprint.
+	 */
+	static Fingerprint read(Path file, int limit, Consumer<Item> items) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size < HEADER_BYTES + FOOTER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException("unexpected size " + size);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			int end = (int) size - 8;
+			ByteBuffer checked = buffer.duplicate();
+			checked.limit(end);
+			CRC32 crc = new CRC32();
+			crc.update(checked);
+			if(crc.getValue() != buffer.getLong(end)) {
+				throw new IOException("checksum mismatch");
+			}
+			if(buffer.getInt() != MAGIC) {
+				throw new IOException("not a catalog snapshot");
+			}
+			int format = buffer.getInt();
+			if(format != FORMAT_VERSION) {
+				throw new IOException("unsupported format version " + format);
+			}
+			buffer.getLong();
+			int entriesEnd = end - 24;
+			long count = 0;
+			try {
+				for(; buffer.position() < entriesEnd; count++) {
+					if(count >= limit) {
+						buffer.position(buffer.position() + 24);
+						skipString(buffer);
+						skipString(buffer);
+						continue;
+					}
+					Item item = new Item();
+					item.setId(buffer.getLong());
+					item.setVersion(buffer.getLong());
+					item.setPriceCents(buffer.getLong());
+					item.setName(readString(buffer));
+					item.setDescription(readString(buffer));
+					items.accept(item);
+				}
+			} catch(BufferUnderflowException | IllegalArgumentException ex) {
+				throw new IOException("truncated entry");
+			}
+			Fingerprint fingerprint = new Fingerprint(buffer.getLong(entriesEnd), buffer.getLong(entriesEnd + 8),
+					buffer.getLong(entriesEnd + 16));
+			if(buffer.position() != entriesEnd || fingerprint.count != count) {
+				throw new IOException("entry count mismatch");
+			}
+			return fingerprint;
+		}
+	}
+
+	Fingerprint fingerprint() {
+		return jdbcTemplate.queryForObject(FINGERPRINT_SQL,
+				(rs, row) -> new Fingerprint(rs.getLong(1), rs.getLong(2), rs.getLong(3)));
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[stringLength(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void skipString(ByteBuffer buffer) {
+		int length = stringLength(buffer);
+		buffer.position(buffer.position() + length);
+	}
+
+	private static int stringLength(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if(length < 0 || length > buffer.remaining()) {
+			throw new IllegalArgumentException("bad string length " + length);
+		}
+		return length;
+	}
+
+	private static class SnapshotException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private SnapshotException(IOException cause) {
+			super(cause);
+		}
+	}
+}
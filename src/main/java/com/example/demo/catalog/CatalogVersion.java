@@ -0,0 +1,60 @@
+package com.example.demo.catalog;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.persistence.CatalogRevision;
+import com.example.demo.model.persistence.Item;
+
+/**
+ * Versions of the catalog and its items, from which the item endpoints
+ * derive their ETags. Both come from the database, so every node hands out
+ * the same tag for the same content and a restart does not reuse a tag.
+ * <p>
+ * An item's tag is its id and row version. The catalog's tag is the
+ * revision counted in {@code catalog_revision}, which every item write
+ * (through {@link ItemEntityListener}) and every import batch bumps in its
+ * own transaction; the row lock this takes serializes catalog writes, which
+ * are rare next to reads.
+ */
+@Component
+public class CatalogVersion {
+
+	private static final String CURRENT_SQL = "select revision from catalog_revision where id = " + CatalogRevision.ID;
+
+	private static final String BUMP_SQL = "update catalog_revision set revision = revision + 1 where id = " + CatalogRevision.ID;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	/**
+	 * The last committed catalog revision, 0 before the first change.
+	 */
+	public long current() {
+		List<Long> revision = jdbcTemplate.queryForList(CURRENT_SQL, Long.class);
+		return revision.isEmpty() ? 0 : revision.get(0);
+	}
+
+	public String catalogETag() {
+		return catalogETag(current());
+	}
+
+	public static String catalogETag(long revision) {
+		return "\"catalog-" + revision + "\"";
+	}
+
+	public static String itemETag(Item item) {
+		return "\"item-" + item.getId() + "-" + item.getVersion() + "\"";
+	}
+
+	/**
+	 * Counts a catalog change, as part of the caller's transaction if there
+	 * is one.
+	 */
+	public void bump() {
+		jdbcTemplate.update(BUMP_SQL);
+	}
+}
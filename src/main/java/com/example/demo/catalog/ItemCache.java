@@ -0,0 +1,128 @@
+package com.example.demo.catalog;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Near cache in front of {@link ItemRepository} for lookups by id and by
+ * name. Entries are dropped once an item write commits and otherwise expire
+ * after the configured time to live.
+ */
+@Component
+public class ItemCache {
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private final BoundedCache<Long, Item> byId;
+
+	private final BoundedCache<String, List<Item>> byName;
+
+	public ItemCache(@Value("${catalog.cache.max-items:10000}") int maxItems,
+			@Value("${catalog.cache.max-names:10000}") int maxNames,
+			@Value("${catalog.cache.ttl-seconds:300}") long ttlSeconds) {
+		this.byId = new BoundedCache<>("items.byId", maxItems, ttlSeconds, TimeUnit.SECONDS);
+		this.byName = new BoundedCache<>("items.byName", maxNames, ttlSeconds, TimeUnit.SECONDS);
+	}
+
+	@PostConstruct
+	public void bindMetrics() {
+		if(meterRegistry != null) {
+			byId.bindTo(meterRegistry);
+			byName.bindTo(meterRegistry);
+		}
+	}
+
+	public Optional<Item> findById(Long id) {
+		return Optional.ofNullable(byId.get(id, key -> itemRepository.findById(key).orElse(null)));
+	}
+
+	/**
+	 * Looks up several items, querying the repository once for all of the ids
+	 * that are not cached. Unknown ids are left out of the result.
+	 */
+	public Map<Long, Item> findAllById(Collection<Long> ids) {
+		Map<Long, Item> items = new LinkedHashMap<>();
+		Set<Long> missing = new LinkedHashSet<>();
+		for(Long id : ids) {
+			Item item = byId.getIfPresent(id);
+			if(item != null) {
+				items.put(id, item);
+			} else {
+				missing.add(id);
+			}
+		}
+		if(!missing.isEmpty()) {
+			for(Item item : itemRepository.findAllById(missing)) {
+				byId.put(item.getId(), item);
+				items.put(item.getId(), item);
+			}
+		}
+		return items;
+	}
+
+	public List<Item> findByName(String name) {
+		return byName.get(name, key -> {
+			List<Item> items = itemRepository.findByName(key);
+			return items == null ? null : Collections.unmodifiableList(new ArrayList<>(items));
+		});
+	}
+
+	public void put(Item item) {
+		byId.put(item.getId(), item);
+	}
+
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChanged(ItemChangedEvent event) {
+		byId.invalidate(event.getItemId());
+		// a rename changes two name keys and only the new one is known here
+		byName.invalidateAll();
+	}
+
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	@EventListener
+	public void onCatalogReloaded(CatalogReloadedEvent event) {
+		invalidateAll();
+	}
+
+	public void invalidateAll() {
+		byId.invalidateAll();
+		byName.invalidateAll();
+	}
+
+	public BoundedCache<Long, Item> getByIdCache() {
+		return byId;
+	}
+
+	public BoundedCache<String, List<Item>> getByNameCache() {
+		return byName;
+	}
+}
@@ -0,0 +1,24 @@
+package com.example.demo.catalog;
+
+/**
+ * Published after an item row is inserted, updated or deleted through JPA.
+ */
+public class ItemChangedEvent {
+
+	private final Long itemId;
+
+	private final String name;
+
+	public ItemChangedEvent(Long itemId, String name) {
+		this.itemId = itemId;
+		this.name = name;
+	}
+
+	public Long getItemId() {
+		return itemId;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,50 @@
+package com.example.demo.catalog;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.persistence.PrePersist;
+import javax.persistence.PreRemove;
+import javax.persistence.PreUpdate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.example.demo.model.persistence.Item;
+
+/**
+ * JPA callbacks for {@link Item} that turn row changes into
+ * {@link ItemChangedEvent}s for the in-memory catalog structures. Hibernate
+ * creates this listener through Spring, which injects its collaborators.
+ * <p>
+ * The catalog revision is bumped from the pre-write callbacks. Item rows
+ * usually reach the database in the flush inside commit, after any
+ * before-commit hook has run, so the post-write callbacks are too late to
+ * count the change in the same transaction.
+ */
+public class ItemEntityListener {
+
+	@Autowired
+	private ApplicationEventPublisher publisher;
+
+	@Autowired
+	private CatalogVersion catalogVersion;
+
+	@PrePersist
+	@PreUpdate
+	@PreRemove
+	public void itemWriting(Item item) {
+		if(catalogVersion != null) {
+			catalogVersion.bump();
+		}
+	}
+
+	@PostPersist
+	@PostUpdate
+	@PostRemove
+	public void itemChanged(Item item) {
+		if(publisher != null) {
+			publisher.publishEvent(new ItemChangedEvent(item.getId(), item.getName()));
+		}
+	}
+}
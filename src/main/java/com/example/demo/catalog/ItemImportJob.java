@@ -0,0 +1,111 @@
+package com.example.demo.catalog;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Progress of one bulk item import, as reported by the status endpoint.
+ */
+public class ItemImportJob {
+
+	private static final int MAX_ERRORS = 20;
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	@JsonProperty
+	private final String id;
+
+	@JsonProperty
+	private volatile Status status = Status.QUEUED;
+
+	@JsonProperty
+	private final Instant submittedAt = Instant.now();
+
+	@JsonProperty
+	private volatile Instant finishedAt;
+
+	private final AtomicLong imported = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final List<String> errors = new ArrayList<>();
+
+	public ItemImportJob(String id) {
+		this.id = id;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Instant getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public Instant getFinishedAt() {
+		return finishedAt;
+	}
+
+	/**
+	 * Items committed so far.
+	 */
+	@JsonProperty
+	public long getImported() {
+		return imported.get();
+	}
+
+	/**
+	 * Input records skipped because they could not be read as an item.
+	 */
+	@JsonProperty
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * The first few rejection and failure messages.
+	 */
+	@JsonProperty
+	public List<String> getErrors() {
+		synchronized(errors) {
+			return Collections.unmodifiableList(new ArrayList<>(errors));
+		}
+	}
+
+	void running() {
+		status = Status.RUNNING;
+	}
+
+	void imported(int count) {
+		imported.addAndGet(count);
+	}
+
+	void rejected(long line, String reason) {
+		rejected.incrementAndGet();
+		error("line " + line + ": " + reason);
+	}
+
+	void finished(Status outcome) {
+		finishedAt = Instant.now();
+		status = outcome;
+	}
+
+	void error(String message) {
+		synchronized(errors) {
+			if(errors.size() < MAX_ERRORS) {
+				errors.add(message);
+			}
+		}
+	}
+}
@@ -0,0 +1,313 @@
+package com.example.demo.catalog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.model.Money;
+import com.example.demo.model.persistence.Item;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Loads items in bulk from CSV or newline-delimited JSON with batched JDBC
+ * inserts, bypassing the persistence context.
+ * <p>
+ * An upload of at most {@code catalog.import.max-bytes} is first copied to
+ * a temporary file so the request can return right away with a job id; jobs then run one at a time on a background
+ * thread and commit every batch separately, so progress is visible while a
+ * job runs and a failure keeps the batches already written. Ids are
+ * reserved from {@code item_seq} in the same blocks of 50 that Hibernate's
+ * pooled-lo optimizer uses, so imported and JPA-created items never collide.
+ * Each batch bumps the {@link CatalogVersion} as it commits.
+ * Queued and running jobs are always kept; finished ones are remembered for
+ * a day, up to the last hundred.
+ * <p>
+ * CSV input needs a {@code name,price,description} header (any column
+ * order) and may quote fields, but not across lines. NDJSON input has one
+ * item object per line, as returned by the item endpoints; ids are ignored.
+ */
+@Component
+public class ItemImporter {
+
+	private static final Logger log = LoggerFactory.getLogger(ItemImporter.class);
+
+	public enum Format {
+		CSV, NDJSON
+	}
+
+	private static final String INSERT_SQL = "insert into item (id, name, price_cents, description, version) values (?, ?, ?, ?, 0)";
+
+	private static final String NEXT_ID_BLOCK_SQL = "select next value for item_seq";
+
+	// must match the increment_size of the item id generator
+	private static final int ID_BLOCK_SIZE = 50;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private ApplicationEventPublisher publisher;
+
+	@Autowired
+	private CatalogVersion catalogVersion;
+
+	@Value("${catalog.import.batch-size:1000}")
+	private int batchSize;
+
+	@Value("${catalog.import.max-bytes:104857600}")
+	private long maxBytes = 104857600;
+
+	private final Map<String, ItemImportJob> active = new ConcurrentHashMap<>();
+
+	private final BoundedCache<String, ItemImportJob> finished = new BoundedCache<>("items.import.jobs", 100, 1, TimeUnit.DAYS);
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "item-import");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private long nextId;
+
+	private long idBlockEnd;
+
+	/**
+	 * Copies the upload aside and queues it for import. Throws
+	 * {@link UploadTooLargeException} once the upload passes the size limit.
+	 */
+	public ItemImportJob submit(InputStream upload, Format format) throws IOException {
+		Path file = Files.createTempFile("item-import-", "." + format.name().toLowerCase(Locale.ROOT));
+		try {
+			copy(upload, file);
+		} catch(IOException ex) {
+			Files.deleteIfExists(file);
+			throw ex;
+		}
+		ItemImportJob job = new ItemImportJob(UUID.randomUUID().toString());
+		active.put(job.getId(), job);
+		executor.execute(() -> run(job, file, format));
+		log.info("Item import " + job.getId() + " queued");
+		return job;
+	}
+
+	public ItemImportJob getJob(String id) {
+		ItemImportJob job = active.get(id);
+		return job != null ? job : finished.getIfPresent(id);
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	void run(ItemImportJob job, Path file, Format format) {
+		job.running();
+		long start = System.nanoTime();
+		try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			importItems(job, reader, format);
+			job.finished(ItemImportJob.Status.COMPLETED);
+			log.info("Item import " + job.getId() + " completed: " + job.getImported() + " imported, "
+					+ job.getRejected() + " rejected in " + (System.nanoTime() - start) / 1000000 + " ms");
+		} catch(Exception ex) {
+			job.error(String.valueOf(ex.getMessage()));
+			job.finished(ItemImportJob.Status.FAILED);
+			log.error("Item import " + job.getId() + " failed after " + job.getImported() + " items", ex);
+		} finally {
+			// cached before it leaves the active jobs so a status poll always finds it
+			finished.put(job.getId(), job);
+			active.remove(job.getId());
+			if(job.getImported() > 0) {
+				publisher.publishEvent(new CatalogReloadedEvent(job.getImported()));
+			}
+			try {
+				Files.deleteIfExists(file);
+			} catch(IOException ex) {
+				log.warn("Could not delete import file " + file);
+			}
+		}
+	}
+
+	private void copy(InputStream upload, Path file) throws IOException {
+		byte[] buffer = new byte[8192];
+		long copied = 0;
+		try(OutputStream out = Files.newOutputStream(file)) {
+			int read;
+			while((read = upload.read(buffer)) != -1) {
+				copied += read;
+				if(copied > maxBytes) {
+					throw new UploadTooLargeException(maxBytes);
+				}
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+
+	private void importItems(ItemImportJob job, BufferedReader reader, Format format) throws IOException {
+		List<Item> batch = new ArrayList<>(batchSize);
+		int[] columns = null;
+		String line;
+		long lineNumber = 0;
+		while((line = reader.readLine()) != null) {
+			lineNumber++;
+			if(line.trim().isEmpty()) {
+				continue;
+			}
+			if(format == Format.CSV && columns == null) {
+				columns = csvColumns(parseCsvLine(line));
+				continue;
+			}
+			Item item;
+			try {
+				item = format == Format.CSV ? csvItem(parseCsvLine(line), columns) : objectMapper.readValue(line, Item.class);
+			} catch(IOException | RuntimeException ex) {
+				job.rejected(lineNumber, String.valueOf(ex.getMessage()));
+				continue;
+			}
+			if(item.getName() == null || item.getName().trim().isEmpty() || item.getDescription() == null) {
+				job.rejected(lineNumber, "name and description are required");
+				continue;
+			}
+			batch.add(item);
+			if(batch.size() >= batchSize) {
+				insert(batch);
+				job.imported(batch.size());
+				batch.clear();
+			}
+		}
+		if(!batch.isEmpty()) {
+			insert(batch);
+			job.imported(batch.size());
+		}
+	}
+
+	private void insert(List<Item> batch) {
+		new TransactionTemplate(transactionManager).execute(status -> {
+			List<Object[]> rows = new ArrayList<>(batch.size());
+			for(Item item : batch) {
+				rows.add(new Object[] { nextId(), item.getName(), item.getPriceCents(), item.getDescription() });
+			}
+			jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+			catalogVersion.bump();
+			return null;
+		});
+	}
+
+	/**
+	 * Hands out ids from the current block, reserving the next block from the
+	 * sequence when it runs out. Only called from the import thread.
+	 */
+	private long nextId() {
+		if(nextId >= idBlockEnd) {
+			nextId = jdbcTemplate.queryForObject(NEXT_ID_BLOCK_SQL, Long.class);
+			idBlockEnd = nextId + ID_BLOCK_SIZE;
+		}
+		return nextId++;
+	}
+
+	private static int[] csvColumns(List<String> header) {
+		int[] columns = { -1, -1, -1 };
+		for(int i = 0; i < header.size(); i++) {
+			// a byte order mark would otherwise stick to the first column name
+			String column = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+			if(column.equals("name")) {
+				columns[0] = i;
+			} else if(column.equals("price")) {
+				columns[1] = i;
+			} else if(column.equals("description")) {
+				columns[2] = i;
+			}
+		}
+		for(int column : columns) {
+			if(column < 0) {
+				throw new IllegalArgumentException("CSV header must name the name, price and description columns");
+			}
+		}
+		return columns;
+	}
+
+	private static Item csvItem(List<String> fields, int[] columns) {
+		Item item = new Item();
+		item.setName(field(fields, columns[0]));
+		item.setPriceCents(Money.parse(field(fields, columns[1])));
+		item.setDescription(field(fields, columns[2]));
+		return item;
+	}
+
+	private static String field(List<String> fields, int column) {
+		if(column >= fields.size()) {
+			throw new IllegalArgumentException("expected at least " + (column + 1) + " fields");
+		}
+		return fields.get(column);
+	}
+
+	/**
+	 * Splits one CSV record, honouring double-quoted fields and doubled quotes
+	 * inside them.
+	 */
+	static List<String> parseCsvLine(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if(quoted) {
+				if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if(c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if(c == '"') {
+				quoted = true;
+			} else if(c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		if(quoted) {
+			throw new IllegalArgumentException("unterminated quoted field");
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
@@ -0,0 +1,139 @@
+package com.example.demo.catalog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.responses.ItemPage;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Item JSON encoded once and reused by every response that contains the
+ * item. Single items are kept as {@link SerializableString}s whose UTF-8
+ * bytes are computed up front, so they can be copied into a response stream
+ * or a Jackson generator without serializing the item again. Catalog pages
+ * are kept as the complete response body.
+ * <p>
+ * Item JSON is keyed by id and row version. Carts and write-behind entries
+ * may still hold an item from before a change, and serializing such an
+ * instance only fills the entry of its own, older version. Pages are keyed
+ * by the {@link CatalogVersion} revision they were loaded at, so a page
+ * cached before a change made on another node is not served for the new
+ * revision. Entries of superseded versions are left to age out; a change
+ * made on this node drops every cached page once its transaction commits.
+ */
+@Component
+public class ItemJsonCache {
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private final BoundedCache<String, SerializableString> items;
+
+	private final BoundedCache<String, byte[]> pages;
+
+	public ItemJsonCache(@Value("${catalog.cache.max-items:10000}") int maxItems,
+			@Value("${catalog.cache.max-pages:1000}") int maxPages,
+			@Value("${catalog.cache.ttl-seconds:300}") long ttlSeconds) {
+		this.items = new BoundedCache<>("items.json", maxItems, ttlSeconds, TimeUnit.SECONDS);
+		this.pages = new BoundedCache<>("items.pages.json", maxPages, ttlSeconds, TimeUnit.SECONDS);
+	}
+
+	@PostConstruct
+	public void bindMetrics() {
+		if(meterRegistry != null) {
+			items.bindTo(meterRegistry);
+			pages.bindTo(meterRegistry);
+		}
+	}
+
+	/**
+	 * The JSON of an item that was already loaded, as of that item's version.
+	 */
+	public SerializableString json(Item item) {
+		return items.get(item.getId() + ":" + item.getVersion(), key -> encode(item));
+	}
+
+	/**
+	 * The response body of a catalog page as of the given catalog revision,
+	 * built from the loaded items on a miss with each item spliced in from
+	 * the item cache.
+	 */
+	public byte[] page(long revision, long after, int limit, Supplier<ItemPage> loader) {
+		return pages.get(revision + ":" + after + ":" + limit, key -> encode(loader.get()));
+	}
+
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChanged(ItemChangedEvent event) {
+		pages.invalidateAll();
+	}
+
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	@EventListener
+	public void onCatalogReloaded(CatalogReloadedEvent event) {
+		invalidateAll();
+	}
+
+	public void invalidateAll() {
+		items.invalidateAll();
+		pages.invalidateAll();
+	}
+
+	private SerializableString encode(Item item) {
+		try {
+			SerializedString json = new SerializedString(objectMapper.writeValueAsString(item));
+			// computed lazily otherwise, on the first response that needs it
+			json.asUnquotedUTF8();
+			return json;
+		} catch(IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private byte[] encode(ItemPage page) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(JsonGenerator gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+			gen.writeStartObject();
+			gen.writeArrayFieldStart("items");
+			List<Item> pageItems = page.getItems();
+			for(Item item : pageItems) {
+				gen.writeRawValue(json(item));
+			}
+			gen.writeEndArray();
+			if(page.getNextAfter() == null) {
+				gen.writeNullField("nextAfter");
+			} else {
+				gen.writeNumberField("nextAfter", page.getNextAfter());
+			}
+			gen.writeEndObject();
+		} catch(IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,56 @@
+package com.example.demo.catalog;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+
+/**
+ * Writes the whole catalog as a JSON array while reading it from a database
+ * cursor, so memory use does not depend on the number of items.
+ */
+@Component
+public class ItemListing {
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private ItemJsonCache itemJsonCache;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Streams every item to {@code out} in id order, copying each item's
+	 * cached JSON bytes. Each entity is detached once written so the
+	 * persistence context stays empty.
+	 */
+	@Transactional(readOnly = true)
+	public void writeAll(OutputStream out) throws IOException {
+		try(Stream<Item> items = itemRepository.streamAllOrderById()) {
+			out.write('[');
+			Iterator<Item> it = items.iterator();
+			for(boolean first = true; it.hasNext(); first = false) {
+				Item item = it.next();
+				if(!first) {
+					out.write(',');
+				}
+				itemJsonCache.json(item).writeUnquotedUTF8(out);
+				entityManager.detach(item);
+			}
+			out.write(']');
+		}
+		out.flush();
+	}
+}
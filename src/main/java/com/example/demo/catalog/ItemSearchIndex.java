@@ -0,0 +1,336 @@
+package com.example.demo.catalog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+
+/**
+ * Inverted index over item names and descriptions for typeahead and ranked
+ * keyword search, kept in memory so lookups never reach the database.
+ * <p>
+ * Terms are lower-cased words kept in a sorted map, so a prefix lookup is a
+ * range scan. A term found in the name scores {@value #NAME_WEIGHT}, in the
+ * description 1. A query matches items that contain every query term, the
+ * last one as a prefix, and ranks them by the sum of the term scores.
+ * Results are picked with a heap bounded by the limit, so a short prefix
+ * matching much of the catalog is not sorted in full.
+ * <p>
+ * The index is built once the application is ready and then updated per
+ * item as item writes commit. Reads do not lock; a search running during an
+ * update may see the item's old or new terms.
+ */
+@Component
+public class ItemSearchIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(ItemSearchIndex.class);
+
+	private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	private static final int NAME_WEIGHT = 3;
+
+	private static final Comparator<Map.Entry<Long, Integer>> BEST_SCORE_FIRST =
+			Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired(required = false)
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	// term -> item id -> score of the term in that item
+	private final ConcurrentSkipListMap<String, Map<Long, Integer>> postings = new ConcurrentSkipListMap<>();
+
+	private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+
+	private static class Document {
+		private final Item item;
+		private final Map<String, Integer> terms;
+		private final String lowerName;
+		// the name's terms joined by single spaces, to compare with a normalized prefix
+		private final String nameTerms;
+
+		private Document(Item item, Map<String, Integer> terms) {
+			this.item = item;
+			this.terms = terms;
+			this.lowerName = item.getName() == null ? "" : item.getName().toLowerCase(Locale.ROOT);
+			this.nameTerms = String.join(" ", tokenize(item.getName()));
+		}
+
+		private boolean hasNameTerms(List<String> words) {
+			for(String word : words) {
+				Integer score = terms.get(word);
+				if(score == null || score < NAME_WEIGHT) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		long start = System.nanoTime();
+		if(transactionManager == null) {
+			indexAll();
+		} else {
+			new TransactionTemplate(transactionManager).execute(status -> {
+				indexAll();
+				return null;
+			});
+		}
+		log.info("Indexed " + documents.size() + " items for search in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onItemChanged(ItemChangedEvent event) {
+		Item item = itemRepository.findById(event.getItemId()).orElse(null);
+		if(item == null) {
+			remove(event.getItemId());
+		} else {
+			index(item);
+		}
+	}
+
+	@EventListener
+	public void onCatalogReloaded(CatalogReloadedEvent event) {
+		rebuild();
+	}
+
+	public synchronized void index(Item item) {
+		remove(item.getId());
+		Map<String, Integer> terms = new HashMap<>();
+		for(String term : tokenize(item.getDescription())) {
+			terms.put(term, 1);
+		}
+		for(String term : tokenize(item.getName())) {
+			terms.put(term, NAME_WEIGHT);
+		}
+		for(Map.Entry<String, Integer> term : terms.entrySet()) {
+			postings.computeIfAbsent(term.getKey(), key -> new ConcurrentHashMap<>())
+					.put(item.getId(), term.getValue());
+		}
+		documents.put(item.getId(), new Document(item, terms));
+	}
+
+	public synchronized void remove(Long itemId) {
+		Document document = documents.remove(itemId);
+		if(document == null) {
+			return;
+		}
+		for(String term : document.terms.keySet()) {
+			postings.computeIfPresent(term, (key, ids) -> {
+				ids.remove(itemId);
+				return ids.isEmpty() ? null : ids;
+			});
+		}
+	}
+
+	/**
+	 * Items containing every word of the query, best match first. The last
+	 * word also matches longer words it is a prefix of.
+	 */
+	public List<Item> search(String query, int limit) {
+		List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+		if(terms.isEmpty() || limit < 1) {
+			return Collections.emptyList();
+		}
+		Map<Long, Integer> scores = null;
+		for(String term : terms.subList(0, terms.size() - 1)) {
+			scores = scores == null ? new HashMap<>(exactMatches(term)) : intersect(scores, exactMatches(term));
+			if(scores.isEmpty()) {
+				return Collections.emptyList();
+			}
+		}
+		scores = prefixMatches(terms.get(terms.size() - 1), scores);
+		Top<Map.Entry<Long, Integer>> top = new Top<>(BEST_SCORE_FIRST, limit);
+		for(Map.Entry<Long, Integer> entry : scores.entrySet()) {
+			if(top.accepts(entry) && documents.containsKey(entry.getKey())) {
+				top.add(entry);
+			}
+		}
+		List<Item> items = new ArrayList<>(top.size());
+		for(Map.Entry<Long, Integer> entry : top.sorted()) {
+			Document document = documents.get(entry.getKey());
+			if(document != null) {
+				items.add(document.item);
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Distinct item names containing every word of the prefix, split and
+	 * lower-cased like the indexed names, the last word as a prefix. Names
+	 * that start with the prefix come first, otherwise names sort
+	 * alphabetically.
+	 */
+	public List<String> suggest(String prefix, int limit) {
+		List<String> words = tokenize(prefix);
+		if(words.isEmpty() || limit < 1) {
+			return Collections.emptyList();
+		}
+		List<String> complete = words.subList(0, words.size() - 1);
+		String normalized = String.join(" ", words);
+		Top<Document> top = new Top<>(Comparator.<Document, Boolean>comparing(document -> !document.nameTerms.startsWith(normalized))
+				.thenComparing(document -> document.lowerName), limit);
+		// names held by the heap; a duplicate of an evicted name ranks no better than it, so it is refused anyway
+		Set<String> kept = new HashSet<>();
+		for(Map<Long, Integer> ids : range(words.get(words.size() - 1)).values()) {
+			for(Map.Entry<Long, Integer> id : ids.entrySet()) {
+				Document document = documents.get(id.getKey());
+				if(id.getValue() >= NAME_WEIGHT && document != null && !kept.contains(document.lowerName)
+						&& top.accepts(document) && document.hasNameTerms(complete)) {
+					kept.add(document.lowerName);
+					Document evicted = top.add(document);
+					if(evicted != null) {
+						kept.remove(evicted.lowerName);
+					}
+				}
+			}
+		}
+		List<String> names = new ArrayList<>(top.size());
+		for(Document document : top.sorted()) {
+			names.add(document.item.getName());
+		}
+		return names;
+	}
+
+	public int size() {
+		return documents.size();
+	}
+
+	private void indexAll() {
+		try(Stream<Item> items = itemRepository.streamAllOrderById()) {
+			items.forEach(item -> {
+				index(item);
+				entityManager.detach(item);
+			});
+		}
+	}
+
+	private Map<Long, Integer> exactMatches(String term) {
+		Map<Long, Integer> ids = postings.get(term);
+		return ids == null ? Collections.emptyMap() : ids;
+	}
+
+	/**
+	 * Best score of any term starting with the prefix, per item. With
+	 * {@code within}, only those items are collected and their scores are
+	 * added, so a short last word does not gather ids the earlier words
+	 * already ruled out.
+	 */
+	private Map<Long, Integer> prefixMatches(String prefix, Map<Long, Integer> within) {
+		Map<Long, Integer> scores = new HashMap<>();
+		for(Map<Long, Integer> ids : range(prefix).values()) {
+			for(Map.Entry<Long, Integer> id : ids.entrySet()) {
+				if(within == null || within.containsKey(id.getKey())) {
+					scores.merge(id.getKey(), id.getValue(), Math::max);
+				}
+			}
+		}
+		if(within != null) {
+			scores.replaceAll((id, score) -> score + within.get(id));
+		}
+		return scores;
+	}
+
+	private NavigableMap<String, Map<Long, Integer>> range(String prefix) {
+		return postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+
+	private static Map<Long, Integer> intersect(Map<Long, Integer> scores, Map<Long, Integer> matches) {
+		Map<Long, Integer> result = new LinkedHashMap<>();
+		for(Map.Entry<Long, Integer> entry : scores.entrySet()) {
+			Integer score = matches.get(entry.getKey());
+			if(score != null) {
+				result.put(entry.getKey(), entry.getValue() + score);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The first {@code limit} candidates in the given order, kept in a heap
+	 * with the worst of them on top.
+	 */
+	private static class Top<T> {
+		private final Comparator<T> order;
+		private final int limit;
+		private final PriorityQueue<T> heap;
+
+		private Top(Comparator<T> order, int limit) {
+			this.order = order;
+			this.limit = limit;
+			this.heap = new PriorityQueue<>(limit + 1, order.reversed());
+		}
+
+		private boolean accepts(T candidate) {
+			return heap.size() < limit || order.compare(candidate, heap.peek()) < 0;
+		}
+
+		/**
+		 * Adds an accepted candidate and returns the one it pushed out, if any.
+		 */
+		private T add(T candidate) {
+			heap.add(candidate);
+			return heap.size() > limit ? heap.poll() : null;
+		}
+
+		private int size() {
+			return heap.size();
+		}
+
+		private List<T> sorted() {
+			List<T> sorted = new ArrayList<>(heap);
+			sorted.sort(order);
+			return sorted;
+		}
+	}
+
+	static List<String> tokenize(String text) {
+		List<String> terms = new ArrayList<>();
+		if(text == null) {
+			return terms;
+		}
+		for(String term : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+			if(!term.isEmpty()) {
+				terms.add(term);
+			}
+		}
+		return terms;
+	}
+}
@@ -0,0 +1,16 @@
+package com.example.demo.catalog;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an import upload is larger than
+ * {@code catalog.import.max-bytes}. Nothing of the upload is kept.
+ */
+public class UploadTooLargeException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UploadTooLargeException(long maxBytes) {
+		super("Upload is larger than " + maxBytes + " bytes");
+	}
+}
@@ -1,81 +1,233 @@
 package com.example.demo.controllers;
 
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.IntStream;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.demo.cart.CartETags;
+import com.example.demo.cart.CartLocks;
+import com.example.demo.cart.CartStore;
+import com.example.demo.catalog.ItemCache;
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
-import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
-import com.example.demo.model.persistence.repositories.ItemRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartBatchRequest;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartDelta;
 
 @RestController
 @RequestMapping("/api/cart")
 public class CartController {
 
 	private static final Logger log = LoggerFactory.getLogger(CartController.class);
-	
+
+	private static final int MAX_UPDATE_ATTEMPTS = 3;
+
 	@Autowired
-	private UserRepository userRepository;
-	
+	private UserLookup userLookup;
+
 	@Autowired
-	private CartRepository cartRepository;
-	
+	private ItemCache itemCache;
+
 	@Autowired
-	private ItemRepository itemRepository;
-	
-	@PostMapping("/addToCart")
-	public ResponseEntity<Cart> addToCart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
-		if(user == null) {
+	private CartLocks cartLocks;
+
+	@Autowired
+	private CartStore cartStore;
+
+	private static final String DELTA_VIEW = "view=delta";
+
+	@GetMapping
+	public ResponseEntity<Cart> getCart(@RequestParam String username,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		Long cartId = userLookup.cartId(username);
+		if(cartId == null) {
 			log.warn("Invalid username");
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Optional<Item> item = itemRepository.findById(request.getItemId());
-		if(!item.isPresent()) {
-			log.warn("Invalid item");
-			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		Cart cart;
+		String etag;
+		Lock lock = cartLocks.lockFor(cartId);
+		lock.lock();
+		try {
+			cart = cartStore.checkout(cartId);
+			if(cart == null) {
+				log.warn("Invalid username");
+				return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+			}
+			// the live write-behind cart is shared, so the body is a copy taken under the lock
+			cart = cart.copy();
+			etag = CartETags.of(cart);
+		} finally {
+			lock.unlock();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.addItem(item.get()));
-		cartRepository.save(cart);
-		log.info("Items are successfully added to cart " + cart.getId());
+		if(ETags.matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		return ResponseEntity.ok().eTag(etag).body(cart);
+	}
 
-		return ResponseEntity.ok(cart);
+	@PostMapping("/addToCart")
+	public ResponseEntity<Cart> addToCart(@RequestBody ModifyCartRequest request) {
+		return addToCart(request, Function.identity());
 	}
-	
+
+	/**
+	 * Same as {@link #addToCart(ModifyCartRequest)} but answers with the
+	 * changed line and new total only.
+	 */
+	@PostMapping(value = "/addToCart", params = DELTA_VIEW)
+	public ResponseEntity<CartDelta> addToCartDelta(@RequestBody ModifyCartRequest request) {
+		return addToCart(request, deltaView(Collections.singleton(request.getItemId())));
+	}
+
 	@PostMapping("/removeFromCart")
 	public ResponseEntity<Cart> removeFromCart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
-		if(user == null) {
-			log.warn("Invalid username");
+		return removeFromCart(request, Function.identity());
+	}
+
+	@PostMapping(value = "/removeFromCart", params = DELTA_VIEW)
+	public ResponseEntity<CartDelta> removeFromCartDelta(@RequestBody ModifyCartRequest request) {
+		return removeFromCart(request, deltaView(Collections.singleton(request.getItemId())));
+	}
+
+	/**
+	 * Applies a list of add/remove operations with one user lookup, one item
+	 * query and one cart save, instead of a round trip per operation.
+	 */
+	@PostMapping("/batch")
+	public ResponseEntity<Cart> modifyCart(@RequestBody ModifyCartBatchRequest request) {
+		return modifyCart(request, Function.identity());
+	}
+
+	@PostMapping(value = "/batch", params = DELTA_VIEW)
+	public ResponseEntity<CartDelta> modifyCartDelta(@RequestBody ModifyCartBatchRequest request) {
+		return modifyCart(request, cart -> CartDelta.of(cart, itemIdsOf(request.getOperations()), CartETags.of(cart)));
+	}
+
+	private <T> ResponseEntity<T> addToCart(ModifyCartRequest request, Function<Cart, T> view) {
+		Optional<Item> item = itemCache.findById(request.getItemId());
+		if(!item.isPresent()) {
+			log.warn("Invalid item");
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Optional<Item> item = itemRepository.findById(request.getItemId());
+		return updateCart(request.getUsername(), cart -> cart.addItem(item.get(), request.getQuantity()), view,
+				"Items are successfully added to cart ");
+	}
+
+	private <T> ResponseEntity<T> removeFromCart(ModifyCartRequest request, Function<Cart, T> view) {
+		Optional<Item> item = itemCache.findById(request.getItemId());
 		if(!item.isPresent()) {
 			log.warn("Invalid item");
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.removeItem(item.get()));
-		cartRepository.save(cart);
-		log.info("Items are successfully removed from cart " + cart.getId());
+		return updateCart(request.getUsername(), cart -> cart.removeItem(item.get(), request.getQuantity()), view,
+				"Items are successfully removed from cart ");
+	}
 
-		return ResponseEntity.ok(cart);
+	private <T> ResponseEntity<T> modifyCart(ModifyCartBatchRequest request, Function<Cart, T> view) {
+		List<CartOperation> operations = request.getOperations();
+		if(operations == null || operations.isEmpty()) {
+			log.warn("Empty cart batch");
+			return ResponseEntity.badRequest().build();
+		}
+		for(CartOperation operation : operations) {
+			if(operation.getAction() == null) {
+				log.warn("Missing cart operation action");
+				return ResponseEntity.badRequest().build();
+			}
+		}
+		Set<Long> itemIds = itemIdsOf(operations);
+		Map<Long, Item> items = itemCache.findAllById(itemIds);
+		if(items.size() != itemIds.size()) {
+			log.warn("Invalid item");
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		return updateCart(request.getUsername(), cart -> {
+			for(CartOperation operation : operations) {
+				Item item = items.get(operation.getItemId());
+				if(operation.getAction() == CartOperation.Action.ADD) {
+					cart.addItem(item, operation.getQuantity());
+				} else {
+					cart.removeItem(item, operation.getQuantity());
+				}
+			}
+		}, view, operations.size() + " cart operations are successfully applied to cart ");
 	}
-		
+
+	/**
+	 * Takes the cart's stripe lock, then reads the cart, runs the mutation,
+	 * saves the cart and builds the response from a copy taken while still
+	 * holding the lock, so serializing it later cannot race with other
+	 * mutations or the write-behind flush. Reading only after locking lets same-cart updates on this node see each
+	 * other's writes. A version conflict with another node rolls back and
+	 * clears the persistence context, so the retry re-reads the current cart
+	 * before applying the mutation again.
+	 */
+	private <T> ResponseEntity<T> updateCart(String username, Consumer<Cart> mutation, Function<Cart, T> view,
+			String successMessage) {
+		Long cartId = userLookup.cartId(username);
+		if(cartId == null) {
+			log.warn("Invalid username");
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		for(int attempt = 1; ; attempt++) {
+			Lock lock = cartLocks.lockFor(cartId);
+			lock.lock();
+			try {
+				Cart cart = cartStore.checkout(cartId);
+				if(cart == null) {
+					log.warn("Invalid username");
+					return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+				}
+				mutation.accept(cart);
+				cartStore.save(cart);
+				log.info(successMessage + cart.getId());
+				Cart snapshot = cart.copy();
+				return ResponseEntity.ok().eTag(CartETags.of(snapshot)).body(view.apply(snapshot));
+			} catch(OptimisticLockingFailureException ex) {
+				if(attempt >= MAX_UPDATE_ATTEMPTS) {
+					log.warn("Cart " + cartId + " is still conflicting after " + attempt + " attempts");
+					throw ex;
+				}
+				log.info("Concurrent update of cart " + cartId + ", retrying");
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private static Function<Cart, CartDelta> deltaView(Set<Long> changedItemIds) {
+		return cart -> CartDelta.of(cart, changedItemIds, CartETags.of(cart));
+	}
+
+	private static Set<Long> itemIdsOf(List<CartOperation> operations) {
+		Set<Long> itemIds = new LinkedHashSet<>();
+		for(CartOperation operation : operations) {
+			itemIds.add(operation.getItemId());
+		}
+		return itemIds;
+	}
+
 }
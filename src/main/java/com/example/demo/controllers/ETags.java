@@ -0,0 +1,31 @@
+package com.example.demo.controllers;
+
+/**
+ * If-None-Match handling shared by the controllers that answer conditional
+ * GETs.
+ */
+final class ETags {
+
+	private ETags() {
+	}
+
+	/**
+	 * Whether an If-None-Match header value names the given strong ETag,
+	 * either directly, in a comma separated list or through "*".
+	 */
+	static boolean matches(String ifNoneMatch, String etag) {
+		if(ifNoneMatch == null || etag == null) {
+			return false;
+		}
+		for(String candidate : ifNoneMatch.split(",")) {
+			String tag = candidate.trim();
+			if(tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if(tag.equals("*") || tag.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -1,40 +1,205 @@
 package com.example.demo.controllers;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.example.demo.catalog.CatalogVersion;
+import com.example.demo.catalog.ItemCache;
+import com.example.demo.catalog.ItemImportJob;
+import com.example.demo.catalog.ItemImporter;
+import com.example.demo.catalog.ItemJsonCache;
+import com.example.demo.catalog.ItemListing;
+import com.example.demo.catalog.ItemSearchIndex;
+import com.example.demo.catalog.UploadTooLargeException;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ItemPage;
 
 @RestController
 @RequestMapping("/api/item")
 public class ItemController {
 
+	private static final Logger log = LoggerFactory.getLogger(ItemController.class);
+
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	private static final int MAX_SEARCH_RESULTS = 100;
+
+	private static final int MAX_SUGGESTIONS = 20;
+
 	@Autowired
 	private ItemRepository itemRepository;
+
+	@Autowired
+	private ItemCache itemCache;
+
+	@Autowired
+	private ItemJsonCache itemJsonCache;
+
+	@Autowired
+	private ItemListing itemListing;
+
+	@Autowired
+	private ItemSearchIndex itemSearchIndex;
+
+	@Autowired
+	private CatalogVersion catalogVersion;
+
+	@Autowired
+	private ItemImporter itemImporter;
+
+	private static final String NDJSON = "application/x-ndjson";
 	
+	/**
+	 * Streams the whole catalog as a JSON array in id order, or answers 304
+	 * if the client's copy is still current.
+	 */
 	@GetMapping
-	public ResponseEntity<List<Item>> getItems() {
-		return ResponseEntity.ok(itemRepository.findAll());
+	public void getItems(HttpServletResponse response,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
+		String etag = catalogVersion.catalogETag();
+		response.setHeader(HttpHeaders.ETAG, etag);
+		if(ETags.matches(ifNoneMatch, etag)) {
+			response.setStatus(HttpStatus.NOT_MODIFIED.value());
+			return;
+		}
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		itemListing.writeAll(response.getOutputStream());
+	}
+
+	/**
+	 * Returns up to {@code limit} items with an id greater than {@code after}.
+	 * Pass the returned {@code nextAfter} as {@code after} to get the next page.
+	 */
+	@GetMapping(params = "limit")
+	public ResponseEntity<byte[]> getItemPage(@RequestParam int limit,
+			@RequestParam(defaultValue = "0") long after,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		if(limit < 1 || limit > MAX_PAGE_SIZE) {
+			log.warn("Invalid page size " + limit);
+			return ResponseEntity.badRequest().build();
+		}
+		// read the revision before the page so a concurrent change can only make the tag older
+		long revision = catalogVersion.current();
+		String etag = CatalogVersion.catalogETag(revision);
+		if(ETags.matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		byte[] page = itemJsonCache.page(revision, after, limit, () -> {
+			List<Item> items = itemRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, limit));
+			Long nextAfter = items.size() < limit ? null : items.get(items.size() - 1).getId();
+			return new ItemPage(items, nextAfter);
+		});
+		return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON_UTF8).body(page);
 	}
 	
 	@GetMapping("/{id}")
-	public ResponseEntity<Item> getItemById(@PathVariable Long id) {
-		return ResponseEntity.of(itemRepository.findById(id));
+	public ResponseEntity<byte[]> getItemById(@PathVariable Long id,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		Item item = itemCache.findById(id).orElse(null);
+		if(item == null) {
+			return ResponseEntity.notFound().build();
+		}
+		// tag and body both come from the same loaded version
+		String etag = CatalogVersion.itemETag(item);
+		if(ETags.matches(ifNoneMatch, etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		return ResponseEntity.ok().eTag(etag).contentType(MediaType.APPLICATION_JSON_UTF8)
+				.body(itemJsonCache.json(item).asUnquotedUTF8());
 	}
 	
 	@GetMapping("/name/{name}")
 	public ResponseEntity<List<Item>> getItemsByName(@PathVariable String name) {
-		List<Item> items = itemRepository.findByName(name);
+		List<Item> items = itemCache.findByName(name);
 		return items == null || items.isEmpty() ? ResponseEntity.notFound().build()
 				: ResponseEntity.ok(items);
 			
 	}
+
+	/**
+	 * Ranked keyword search over item names and descriptions. The last word
+	 * of the query may be incomplete.
+	 */
+	@GetMapping("/search")
+	public ResponseEntity<List<Item>> searchItems(@RequestParam String q,
+			@RequestParam(defaultValue = "20") int limit) {
+		if(limit < 1 || limit > MAX_SEARCH_RESULTS) {
+			log.warn("Invalid search limit " + limit);
+			return ResponseEntity.badRequest().build();
+		}
+		return ResponseEntity.ok(itemSearchIndex.search(q, limit));
+	}
+
+	/**
+	 * Item names for typeahead, matching any word of the name by prefix.
+	 */
+	@GetMapping("/suggest")
+	public ResponseEntity<List<String>> suggestItemNames(@RequestParam String prefix,
+			@RequestParam(defaultValue = "10") int limit) {
+		if(limit < 1 || limit > MAX_SUGGESTIONS) {
+			log.warn("Invalid suggestion limit " + limit);
+			return ResponseEntity.badRequest().build();
+		}
+		return ResponseEntity.ok(itemSearchIndex.suggest(prefix, limit));
+	}
+
+	/**
+	 * Queues a CSV upload for bulk import and answers with the job to poll.
+	 */
+	@PostMapping(value = "/import", consumes = "text/csv")
+	public ResponseEntity<ItemImportJob> importCsv(HttpServletRequest request) throws IOException {
+		return importItems(request, ItemImporter.Format.CSV);
+	}
+
+	@PostMapping(value = "/import", consumes = NDJSON)
+	public ResponseEntity<ItemImportJob> importNdjson(HttpServletRequest request) throws IOException {
+		return importItems(request, ItemImporter.Format.NDJSON);
+	}
+
+	@GetMapping("/import/{jobId}")
+	public ResponseEntity<ItemImportJob> getImportJob(@PathVariable String jobId) {
+		ItemImportJob job = itemImporter.getJob(jobId);
+		return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+	}
+
+	private ResponseEntity<ItemImportJob> importItems(HttpServletRequest request, ItemImporter.Format format)
+			throws IOException {
+		if(request.getContentLengthLong() > itemImporter.getMaxBytes()) {
+			log.warn("Item import of " + request.getContentLengthLong() + " bytes is over the limit");
+			return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+		}
+		ItemImportJob job;
+		try {
+			job = itemImporter.submit(request.getInputStream(), format);
+		} catch(UploadTooLargeException ex) {
+			log.warn("Item import is over the limit of " + itemImporter.getMaxBytes() + " bytes");
+			return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+		}
+		URI location = ServletUriComponentsBuilder.fromCurrentRequestUri().path("/{jobId}")
+				.buildAndExpand(job.getId()).toUri();
+		return ResponseEntity.accepted().location(location).body(job);
+	}
 	
 }
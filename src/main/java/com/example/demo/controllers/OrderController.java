@@ -1,23 +1,44 @@
 package com.example.demo.controllers;
 
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import com.example.demo.cart.CartStore;
 import com.example.demo.model.persistence.Cart;
-import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
-import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.UserOrderStats;
 import com.example.demo.model.persistence.repositories.OrderRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderHistoryPage;
+import com.example.demo.model.responses.OrderSummary;
+import com.example.demo.order.OrderExporter;
+import com.example.demo.order.OrderHistoryCache;
+import com.example.demo.order.OrderIdempotency;
+import com.example.demo.order.OrderPipeline;
+import com.example.demo.order.OrderStats;
+import com.example.demo.order.OrderSubmission;
 
 @RestController
 @RequestMapping("/api/order")
@@ -25,35 +46,199 @@ public class OrderController {
 
 	private static final Logger log = LoggerFactory.getLogger(OrderController.class);
 
+	private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+	private static final String NDJSON = "application/x-ndjson";
+
 	@Autowired
-	private UserRepository userRepository;
+	private UserLookup userLookup;
 	
 	@Autowired
 	private OrderRepository orderRepository;
+
+	@Autowired
+	private CartStore cartStore;
+
+	@Autowired
+	private OrderIdempotency orderIdempotency;
+
+	@Autowired
+	private OrderPipeline orderPipeline;
+
+	@Autowired
+	private OrderStats orderStats;
+
+	@Autowired
+	private OrderExporter orderExporter;
+
+	@Autowired
+	private OrderHistoryCache orderHistoryCache;
 	
-	
+	/**
+	 * Turns the user's cart into an order. With an Idempotency-Key header a
+	 * retry of the same submission returns the original order.
+	 */
 	@PostMapping("/submit/{username}")
-	public ResponseEntity<UserOrder> submit(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
-		if(user == null) {
+	public ResponseEntity<UserOrder> submit(@PathVariable String username,
+			@RequestHeader(value = OrderIdempotency.HEADER, required = false) String idempotencyKey) {
+		if(idempotencyKey == null) {
+			return createOrder(username);
+		}
+		if(!OrderIdempotency.isValidKey(idempotencyKey)) {
+			log.warn("Invalid idempotency key");
+			return ResponseEntity.badRequest().build();
+		}
+		return orderIdempotency.submit(username, idempotencyKey, () -> createOrder(username),
+				order -> String.valueOf(order.getId()), orderId -> findOrder(username, Long.valueOf(orderId)));
+	}
+
+	/**
+	 * Queues the user's cart as an order and answers 202 with a submission to
+	 * poll, or 503 if the queue is full. Without the order pipeline the order
+	 * is saved right away and the submission is already completed.
+	 */
+	@PostMapping("/submit/{username}/async")
+	public ResponseEntity<OrderSubmission> submitAsync(@PathVariable String username,
+			@RequestHeader(value = OrderIdempotency.HEADER, required = false) String idempotencyKey) {
+		if(idempotencyKey == null) {
+			return queueOrder(username);
+		}
+		if(!OrderIdempotency.isValidKey(idempotencyKey)) {
+			log.warn("Invalid idempotency key");
+			return ResponseEntity.badRequest().build();
+		}
+		return orderIdempotency.submit(username + "\nasync", idempotencyKey, () -> queueOrder(username),
+				OrderSubmission::getId, submissionId -> getSubmission(username, submissionId));
+	}
+
+	@GetMapping("/submission/{username}/{submissionId}")
+	public ResponseEntity<OrderSubmission> getSubmission(@PathVariable String username,
+			@PathVariable String submissionId) {
+		OrderSubmission submission = orderPipeline.getSubmission(submissionId);
+		if(submission == null || !submission.getUsername().equals(username)) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(submission);
+	}
+
+	private ResponseEntity<UserOrder> findOrder(String username, Long orderId) {
+		Long userId = userLookup.userId(username);
+		UserOrder order = userId == null ? null : orderRepository.findByIdAndUserId(orderId, userId);
+		return order == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(order);
+	}
+
+	private ResponseEntity<OrderSubmission> queueOrder(String username) {
+		Cart cart = userLookup.cart(username);
+		if(cart == null) {
+			log.warn("Invalid username. Unable to queue order.");
+			return ResponseEntity.notFound().build();
+		}
+		cart = cartStore.flush(cart);
+		UserOrder order = UserOrder.createFromCart(cart);
+		if(!orderPipeline.isEnabled()) {
+			orderRepository.save(order);
+			log.info("Order is successfully created for cart " + cart.getId());
+			return ResponseEntity.ok(orderPipeline.completed(order));
+		}
+		OrderSubmission submission = orderPipeline.enqueue(order);
+		if(submission == null) {
+			log.warn("Order queue is full, rejecting order for cart " + cart.getId());
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+		}
+		log.info("Order " + order.getId() + " for cart " + cart.getId() + " is queued as " + submission.getId());
+		URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+				.path("/api/order/submission/{username}/{submissionId}")
+				.buildAndExpand(username, submission.getId()).toUri();
+		return ResponseEntity.accepted().location(location).body(submission);
+	}
+
+	private ResponseEntity<UserOrder> createOrder(String username) {
+		Cart cart = userLookup.cart(username);
+		if(cart == null) {
 			log.warn("Invalid username. Unable to create order.");
 			log.warn("Order request fails");
 			return ResponseEntity.notFound().build();
 		}
-		UserOrder order = UserOrder.createFromCart(user.getCart());
+		// pending write-behind changes must reach the cart before it becomes an order
+		cart = cartStore.flush(cart);
+		UserOrder order = UserOrder.createFromCart(cart);
 		orderRepository.save(order);
-		log.info("Order is successfully created for cart " + user.getCart().getId());
+		log.info("Order is successfully created for cart " + cart.getId());
 		log.info("Order request successes");
 
 		return ResponseEntity.ok(order);
 	}
 	
+	/**
+	 * Returns up to {@code limit} of the user's orders with an id below
+	 * {@code before}, newest first. Pass the returned {@code nextBefore} as
+	 * {@code before} to get the next page. The first page is usually served
+	 * from the history cache.
+	 */
 	@GetMapping("/history/{username}")
-	public ResponseEntity<List<UserOrder>> getOrdersForUser(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
-		if(user == null) {
+	public ResponseEntity<OrderHistoryPage> getOrdersForUser(@PathVariable String username,
+			@RequestParam(defaultValue = "20") int limit, @RequestParam(required = false) Long before) {
+		if(limit < 1 || limit > MAX_HISTORY_PAGE_SIZE) {
+			log.warn("Invalid order history page size " + limit);
+			return ResponseEntity.badRequest().build();
+		}
+		Long userId = userLookup.userId(username);
+		if(userId == null) {
 			return ResponseEntity.notFound().build();
 		}
-		return ResponseEntity.ok(orderRepository.findByUser(user));
+		List<OrderSummary> orders = before == null ? orderHistoryCache.firstPage(userId, limit) : null;
+		if(orders == null) {
+			orders = orderRepository.findSummaries(userId, before == null ? Long.MAX_VALUE : before,
+					PageRequest.of(0, limit));
+		}
+		Long nextBefore = orders.size() < limit ? null : orders.get(orders.size() - 1).getId();
+		return ResponseEntity.ok(new OrderHistoryPage(orders, nextBefore));
+	}
+
+	@GetMapping("/history/{username}/{orderId}")
+	public ResponseEntity<UserOrder> getOrderForUser(@PathVariable String username, @PathVariable Long orderId) {
+		return findOrder(username, orderId);
+	}
+
+	/**
+	 * The user's order count, lifetime spend and last order time.
+	 */
+	@GetMapping("/stats/{username}")
+	public ResponseEntity<UserOrderStats> getStatsForUser(@PathVariable String username) {
+		Long userId = userLookup.userId(username);
+		if(userId == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(orderStats.get(userId));
+	}
+
+	/**
+	 * Recomputes every user's order totals from the orders table.
+	 */
+	@PostMapping("/stats/rebuild")
+	public ResponseEntity<Map<String, Integer>> rebuildStats() throws InterruptedException {
+		int users = orderStats.rebuild();
+		log.info("Order stats rebuilt for " + users + " users");
+		return ResponseEntity.ok(Collections.singletonMap("users", users));
+	}
+
+	/**
+	 * Streams all orders with an id above {@code afterId} created in
+	 * [{@code from}, {@code to}) as NDJSON or CSV, in id order.
+	 */
+	@GetMapping("/export")
+	public void exportOrders(HttpServletResponse response, @RequestParam(defaultValue = "ndjson") String format,
+			@RequestParam(required = false) Instant from, @RequestParam(required = false) Instant to,
+			@RequestParam(defaultValue = "0") long afterId) throws IOException {
+		OrderExporter.Format exportFormat;
+		try {
+			exportFormat = OrderExporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+		} catch(IllegalArgumentException ex) {
+			log.warn("Unsupported export format " + format);
+			response.setStatus(HttpStatus.BAD_REQUEST.value());
+			return;
+		}
+		response.setContentType(exportFormat == OrderExporter.Format.CSV ? "text/csv;charset=UTF-8" : NDJSON);
+		orderExporter.export(response.getOutputStream(), exportFormat, from, to, afterId);
 	}
 }
@@ -1,8 +1,12 @@
 package com.example.demo.controllers;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -17,6 +21,8 @@ import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.security.LoginThrottle;
+import com.example.demo.security.PasswordHashingBusyException;
 
 @RestController
 @RequestMapping("/api/user")
@@ -33,6 +39,9 @@ public class UserController {
 	@Autowired
 	private BCryptPasswordEncoder bCryptPasswordEncoder;
 
+	@Autowired
+	private LoginThrottle loginThrottle;
+
 	@GetMapping("/id/{id}")
 	public ResponseEntity<User> findById(@PathVariable Long id) {
 		return ResponseEntity.of(userRepository.findById(id));
@@ -45,7 +54,13 @@ public class UserController {
 	}
 	
 	@PostMapping("/create")
-	public ResponseEntity<User> createUser(@RequestBody CreateUserRequest createUserRequest) {
+	public ResponseEntity<User> createUser(@RequestBody CreateUserRequest createUserRequest, HttpServletRequest request) {
+		long retryAfter = loginThrottle.acquireForUsername(createUserRequest.getUsername(), request.getRemoteAddr());
+		if(retryAfter > 0) {
+			log.warn("CreateUser request fails, too many attempts for \"" + createUserRequest.getUsername() + "\"");
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+					.header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter)).build();
+		}
 		User user = new User();
 		user.setUsername(createUserRequest.getUsername());
 		log.info("User name set with \"" + createUserRequest.getUsername() + "\"");
@@ -59,7 +74,12 @@ public class UserController {
 			log.warn("CreateUser request fails");
 			return ResponseEntity.badRequest().build();
 		}
-		user.setPassword(bCryptPasswordEncoder.encode(createUserRequest.getPassword()));
+		try {
+			user.setPassword(bCryptPasswordEncoder.encode(createUserRequest.getPassword()));
+		} catch(PasswordHashingBusyException ex) {
+			log.warn("CreateUser request fails, password hashing is saturated");
+			return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+		}
 
 		userRepository.save(user);
 		log.info("User \"" + createUserRequest.getUsername() + "\" is successfully created");
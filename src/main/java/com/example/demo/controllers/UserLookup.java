@@ -0,0 +1,66 @@
+package com.example.demo.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.security.JwtPrincipal;
+
+/**
+ * Resolves the user named in a cart or order request. When the request's
+ * token belongs to that user, the ids signed into the token are used and
+ * the username query is skipped; otherwise the user is looked up by name.
+ */
+@Component
+class UserLookup {
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private CartRepository cartRepository;
+
+	/**
+	 * The user's id, or null if there is no such user.
+	 */
+	Long userId(String username) {
+		JwtPrincipal principal = JwtPrincipal.currentFor(username);
+		if(principal != null) {
+			return principal.getUserId();
+		}
+		User user = userRepository.findByUsername(username);
+		return user == null ? null : user.getId();
+	}
+
+	/**
+	 * The id of the user's cart, or null if there is no such user. Nothing is
+	 * loaded into the persistence context, so a cart read after locking this
+	 * id is the current one.
+	 */
+	Long cartId(String username) {
+		JwtPrincipal principal = JwtPrincipal.currentFor(username);
+		if(principal != null && principal.getCartId() != null) {
+			return principal.getCartId();
+		}
+		return userRepository.findCartIdByUsername(username);
+	}
+
+	/**
+	 * The user's cart, loaded together with its user, or null if there is no
+	 * such user.
+	 */
+	Cart cart(String username) {
+		JwtPrincipal principal = JwtPrincipal.currentFor(username);
+		if(principal != null && principal.getCartId() != null) {
+			Cart cart = cartRepository.findById(principal.getCartId()).orElse(null);
+			if(cart != null) {
+				return cart;
+			}
+		}
+		User user = userRepository.findByUsername(username);
+		return user == null ? null : user.getCart();
+	}
+}
@@ -1,24 +1,42 @@
 package com.example.demo;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import com.example.demo.security.PooledBCryptPasswordEncoder;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 @EnableJpaRepositories("com.example.demo.model.persistence.repositories")
 @EntityScan("com.example.demo.model.persistence")
 @SpringBootApplication(exclude = {SecurityAutoConfiguration.class})
+@EnableScheduling
 public class eCommerceApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(eCommerceApplication.class, args);
 	}
 
-	@Bean
-	public BCryptPasswordEncoder bCryptPasswordEncoder() {
-		return new BCryptPasswordEncoder();
+	/**
+	 * Password hashing runs on its own bounded pool, see
+	 * {@link PooledBCryptPasswordEncoder}.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public PooledBCryptPasswordEncoder bCryptPasswordEncoder(
+			@Value("${security.password.bcrypt-strength:10}") int strength,
+			@Value("${security.password.threads:0}") int threads,
+			@Value("${security.password.queue-capacity:64}") int queueCapacity,
+			@Value("${security.password.max-wait-ms:2000}") long maxWaitMillis,
+			ObjectProvider<MeterRegistry> meterRegistry) {
+		PooledBCryptPasswordEncoder encoder = new PooledBCryptPasswordEncoder(strength, threads, queueCapacity, maxWaitMillis);
+		meterRegistry.ifAvailable(encoder::bindTo);
+		return encoder;
 	}
 }
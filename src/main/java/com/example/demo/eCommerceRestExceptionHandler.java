@@ -3,6 +3,7 @@ package com.example.demo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.convert.ConversionFailedException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
@@ -36,11 +37,21 @@ public class eCommerceRestExceptionHandler {
         return new ResponseEntity<>("Request http method is not supported.", HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Catch version conflicts that are still failing after the caller's retries
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseBody
+    public ResponseEntity<?> handleOptimisticLockingFailure(Exception ex) {
+        log.warn("Exception caught: " + ex.getMessage());
+        return new ResponseEntity<>("The resource was modified concurrently, please retry.", HttpStatus.CONFLICT);
+    }
+
     /**
      * Handle failures commonly thrown from code
      */
     @ExceptionHandler({ InvocationTargetException.class, IllegalArgumentException.class, ClassCastException.class,
-            ConversionFailedException.class })
+            ConversionFailedException.class, ArithmeticException.class })
     @ResponseBody
     public ResponseEntity<?> handleMiscFailures(Exception ex) {
         log.error("Exception caught: " + ex.getMessage(), ex);
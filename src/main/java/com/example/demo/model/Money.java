@@ -0,0 +1,109 @@
+package com.example.demo.model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Fixed-point money held as a {@code long} count of cents, so cart and order
+ * arithmetic does not allocate.
+ * <p>
+ * Rounding rules: sums, differences and integer multiples are exact and throw
+ * {@link ArithmeticException} on overflow rather than wrapping. Converting a
+ * decimal amount with more than two fraction digits rounds half up, once, at
+ * the edge of the system. On the wire amounts stay plain JSON decimals with
+ * two fraction digits, e.g. {@code 2.99}.
+ */
+public final class Money {
+
+	public static final int SCALE = 2;
+
+	private static final long CENTS_PER_UNIT = 100;
+
+	private Money() {
+	}
+
+	public static long fromDecimal(BigDecimal amount) {
+		return amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	public static BigDecimal toDecimal(long cents) {
+		return BigDecimal.valueOf(cents, SCALE);
+	}
+
+	public static long plus(long cents, long other) {
+		return Math.addExact(cents, other);
+	}
+
+	public static long minus(long cents, long other) {
+		return Math.subtractExact(cents, other);
+	}
+
+	public static long times(long cents, int quantity) {
+		return Math.multiplyExact(cents, (long) quantity);
+	}
+
+	/**
+	 * Formats cents as a decimal string with two fraction digits, e.g. 299 as
+	 * "2.99" and -5 as "-0.05".
+	 */
+	public static String format(long cents) {
+		StringBuilder text = new StringBuilder(24);
+		long units = cents / CENTS_PER_UNIT;
+		long fraction = Math.abs(cents % CENTS_PER_UNIT);
+		if(cents < 0 && units == 0) {
+			text.append('-');
+		}
+		text.append(units).append('.');
+		if(fraction < 10) {
+			text.append('0');
+		}
+		return text.append(fraction).toString();
+	}
+
+	public static long parse(String amount) {
+		return fromDecimal(new BigDecimal(amount.trim()));
+	}
+
+	/**
+	 * Writes a cents field as the decimal number clients already expect.
+	 */
+	public static class Serializer extends JsonSerializer<Long> {
+		@Override
+		public void serialize(Long cents, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+			gen.writeNumber(format(cents));
+		}
+	}
+
+	/**
+	 * Reads a decimal number (or numeric string) into cents.
+	 */
+	public static class Deserializer extends JsonDeserializer<Long> {
+		@Override
+		public Long deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+			JsonToken token = p.getCurrentToken();
+			if(token == JsonToken.VALUE_NUMBER_INT) {
+				return Math.multiplyExact(p.getLongValue(), CENTS_PER_UNIT);
+			}
+			if(token == JsonToken.VALUE_NUMBER_FLOAT) {
+				return fromDecimal(p.getDecimalValue());
+			}
+			if(token == JsonToken.VALUE_STRING) {
+				try {
+					return parse(p.getText());
+				} catch(NumberFormatException ex) {
+					return (Long) ctxt.handleWeirdStringValue(Long.class, p.getText(), "not a decimal amount");
+				}
+			}
+			return (Long) ctxt.handleUnexpectedToken(Long.class, p);
+		}
+	}
+}
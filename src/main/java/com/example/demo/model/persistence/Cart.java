@@ -1,52 +1,67 @@
 package com.example.demo.model.persistence;
 
-import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
+import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.ManyToMany;
+import javax.persistence.MapKey;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
+import com.example.demo.catalog.CachedItemSerializer;
+import com.example.demo.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 @Entity
 @Table(name = "cart")
 public class Cart {
-	
+
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
 	@JsonProperty
 	@Column
 	private Long id;
-	
-	@ManyToMany
-	@JsonProperty
-	@Column
-    private List<Item> items;
-	
+
+	@OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
+	@MapKey(name = "itemId")
+	@JsonIgnore
+	private Map<Long, CartLine> linesByItemId = new LinkedHashMap<>();
+
 	@OneToOne(mappedBy = "cart")
 	@JsonProperty
     private User user;
-	
-	@Column
+
+	@Column(name = "total_cents", nullable = false)
+	@JsonProperty("total")
+	@JsonSerialize(using = Money.Serializer.class)
+	@JsonDeserialize(using = Money.Deserializer.class)
+	private long totalCents;
+
+	@Version
 	@JsonProperty
-	private BigDecimal total;
-	
-	public BigDecimal getTotal() {
-		return total;
+	private Long version;
+
+	public long getTotalCents() {
+		return totalCents;
 	}
 
-	public void setTotal(BigDecimal total) {
-		this.total = total;
+	public void setTotalCents(long totalCents) {
+		this.totalCents = totalCents;
 	}
 
 	public User getUser() {
@@ -65,33 +80,151 @@ public class Cart {
 		this.id = id;
 	}
 
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+
+	@JsonProperty("lines")
+	public Collection<CartLine> getLines() {
+		return linesByItemId.values();
+	}
+
+	@JsonProperty("lines")
+	public void setLines(Collection<CartLine> lines) {
+		linesByItemId.clear();
+		for(CartLine line : lines) {
+			line.setCart(this);
+			linesByItemId.put(line.getItemId(), line);
+		}
+	}
+
+	/**
+	 * The cart in its former {@code items} shape, one entry per unit, for
+	 * clients that have not moved to {@code lines} yet. Read-only and to be
+	 * removed in the next release. The list is a view over the lines, so
+	 * large quantities are not copied.
+	 */
+	@Deprecated
+	@JsonProperty(value = "items", access = JsonProperty.Access.READ_ONLY)
+	@JsonSerialize(contentUsing = CachedItemSerializer.class)
 	public List<Item> getItems() {
-		return items;
+		return new AbstractList<Item>() {
+			@Override
+			public Item get(int index) {
+				int remaining = index;
+				for(CartLine line : linesByItemId.values()) {
+					if(remaining < line.getQuantity()) {
+						return line.getItem();
+					}
+					remaining -= line.getQuantity();
+				}
+				throw new IndexOutOfBoundsException("Index: " + index);
+			}
+
+			@Override
+			public int size() {
+				long units = 0;
+				for(CartLine line : linesByItemId.values()) {
+					units += line.getQuantity();
+				}
+				return (int) Math.min(units, Integer.MAX_VALUE);
+			}
+
+			@Override
+			public Iterator<Item> iterator() {
+				Iterator<CartLine> lines = linesByItemId.values().iterator();
+				return new Iterator<Item>() {
+					private CartLine line;
+					private int left;
+
+					@Override
+					public boolean hasNext() {
+						while(left == 0 && lines.hasNext()) {
+							line = lines.next();
+							left = line.getQuantity();
+						}
+						return left > 0;
+					}
+
+					@Override
+					public Item next() {
+						if(!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						left--;
+						return line.getItem();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * A copy of the cart and its lines that later changes to this cart do not
+	 * show through, for rendering a response once the cart's lock is released.
+	 * The user and the items are shared.
+	 */
+	public Cart copy() {
+		Cart copy = new Cart();
+		copy.id = id;
+		copy.user = user;
+		copy.totalCents = totalCents;
+		copy.version = version;
+		for(CartLine line : linesByItemId.values()) {
+			copy.linesByItemId.put(line.getItemId(), line.copyFor(copy));
+		}
+		return copy;
 	}
 
-	public void setItems(List<Item> items) {
-		this.items = items;
+	public CartLine getLine(Long itemId) {
+		return linesByItemId.get(itemId);
 	}
-	
+
+	public int getQuantity(Long itemId) {
+		CartLine line = linesByItemId.get(itemId);
+		return line == null ? 0 : line.getQuantity();
+	}
+
 	public void addItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+		addItem(item, 1);
+	}
+
+	public void addItem(Item item, int quantity) {
+		if(quantity <= 0) {
+			return;
 		}
-		items.add(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		CartLine line = linesByItemId.get(item.getId());
+		if(line == null) {
+			line = new CartLine(this, item);
+			linesByItemId.put(item.getId(), line);
 		}
-		total = total.add(item.getPrice());
+		line.setQuantity(Math.addExact(line.getQuantity(), quantity));
+		totalCents = Money.plus(totalCents, Money.times(item.getPriceCents(), quantity));
 	}
-	
+
 	public void removeItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+		removeItem(item, 1);
+	}
+
+	/**
+	 * Removes up to {@code quantity} units of the item; the total only drops by
+	 * the units actually present in the cart.
+	 */
+	public void removeItem(Item item, int quantity) {
+		CartLine line = linesByItemId.get(item.getId());
+		if(line == null || quantity <= 0) {
+			return;
 		}
-		items.remove(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		int removed = Math.min(quantity, line.getQuantity());
+		if(removed == line.getQuantity()) {
+			linesByItemId.remove(item.getId());
+		} else {
+			line.setQuantity(line.getQuantity() - removed);
 		}
-		total = total.subtract(item.getPrice());
+		totalCents = Money.minus(totalCents, Money.times(item.getPriceCents(), removed));
 	}
 }
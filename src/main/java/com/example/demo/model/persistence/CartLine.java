@@ -0,0 +1,114 @@
+package com.example.demo.model.persistence;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+import com.example.demo.catalog.CachedItemSerializer;
+import com.example.demo.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * One row per distinct item in a cart, carrying the quantity instead of
+ * repeating the item once per unit.
+ */
+@Entity
+@JsonIgnoreProperties(value = "lineTotal", allowGetters = true)
+@Table(name = "cart_line")
+public class CartLine {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@JsonIgnore
+	private Long id;
+
+	@ManyToOne
+	@JoinColumn(name = "cart_id", nullable = false)
+	@JsonIgnore
+	private Cart cart;
+
+	@ManyToOne
+	@JoinColumn(name = "item_id", nullable = false)
+	@JsonProperty
+	@JsonSerialize(using = CachedItemSerializer.class)
+	private Item item;
+
+	// read-only copy of the foreign key so Cart can key its lines by item id
+	@Column(name = "item_id", insertable = false, updatable = false)
+	@JsonIgnore
+	private Long itemId;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private int quantity;
+
+	public CartLine() {
+	}
+
+	public CartLine(Cart cart, Item item) {
+		this.cart = cart;
+		this.item = item;
+		this.itemId = item.getId();
+	}
+
+	CartLine copyFor(Cart cart) {
+		CartLine copy = new CartLine();
+		copy.id = id;
+		copy.cart = cart;
+		copy.item = item;
+		copy.itemId = itemId;
+		copy.quantity = quantity;
+		return copy;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Cart getCart() {
+		return cart;
+	}
+
+	public void setCart(Cart cart) {
+		this.cart = cart;
+	}
+
+	public Item getItem() {
+		return item;
+	}
+
+	public void setItem(Item item) {
+		this.item = item;
+		this.itemId = item == null ? null : item.getId();
+	}
+
+	public Long getItemId() {
+		return itemId;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+
+	@JsonProperty("lineTotal")
+	@JsonSerialize(using = Money.Serializer.class)
+	public long getLineTotalCents() {
+		return Money.times(item.getPriceCents(), quantity);
+	}
+}
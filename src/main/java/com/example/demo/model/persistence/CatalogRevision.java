@@ -0,0 +1,31 @@
+package com.example.demo.model.persistence;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * The single row counting committed catalog changes. Only changed by the
+ * statements in {@link com.example.demo.catalog.CatalogVersion}.
+ */
+@Entity
+@Table(name = "catalog_revision")
+public class CatalogRevision {
+
+	public static final long ID = 1L;
+
+	@Id
+	private Long id;
+
+	@Column(nullable = false)
+	private long revision;
+
+	public Long getId() {
+		return id;
+	}
+
+	public long getRevision() {
+		return revision;
+	}
+}
@@ -1,25 +1,37 @@
 package com.example.demo.model.persistence;
 
-import java.math.BigDecimal;
-
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.JoinColumn;
-import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
+import com.example.demo.catalog.ItemEntityListener;
+import com.example.demo.model.Money;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 @Entity
+@EntityListeners(ItemEntityListener.class)
 @Table(name = "item")
 public class Item {
 
+	// ids come from a sequence in blocks of 50 so inserts can be batched; the
+	// bulk importer reserves blocks from the same sequence
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "item_seq")
+	@GenericGenerator(name = "item_seq", strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator", parameters = {
+			@Parameter(name = "sequence_name", value = "item_seq"),
+			@Parameter(name = "initial_value", value = "1000"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled-lo") })
 	@JsonProperty
 	private Long id;
 	
@@ -27,13 +39,19 @@ public class Item {
 	@JsonProperty
 	private String name;
 	
-	@Column(nullable = false)
-	@JsonProperty
-	private BigDecimal price;
+	@Column(name = "price_cents", nullable = false)
+	@JsonProperty("price")
+	@JsonSerialize(using = Money.Serializer.class)
+	@JsonDeserialize(using = Money.Deserializer.class)
+	private long priceCents;
 	
 	@Column(nullable = false)
 	@JsonProperty
 	private String description;
+
+	@Version
+	@JsonIgnore
+	private Long version;
 	
 	@Override
 	public int hashCode() {
@@ -76,12 +94,12 @@ public class Item {
 		this.name = name;
 	}
 
-	public BigDecimal getPrice() {
-		return price;
+	public long getPriceCents() {
+		return priceCents;
 	}
 
-	public void setPrice(BigDecimal price) {
-		this.price = price;
+	public void setPriceCents(long priceCents) {
+		this.priceCents = priceCents;
 	}
 
 	public String getDescription() {
@@ -91,6 +109,14 @@ public class Item {
 	public void setDescription(String description) {
 		this.description = description;
 	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
 	
 	
 	
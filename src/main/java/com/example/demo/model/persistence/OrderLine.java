@@ -0,0 +1,93 @@
+package com.example.demo.model.persistence;
+
+import java.util.Objects;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+import com.example.demo.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * One distinct item of a submitted order, with the item's name and price as
+ * they were when the order was placed. Lines refer to the item by id only,
+ * so later catalog changes neither alter past orders nor get written
+ * through them.
+ */
+@Embeddable
+@JsonIgnoreProperties(value = "lineTotal", allowGetters = true)
+public class OrderLine {
+
+	@Column(name = "item_id", nullable = false)
+	@JsonProperty
+	private Long itemId;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private String name;
+
+	@Column(name = "unit_price_cents", nullable = false)
+	@JsonProperty("price")
+	@JsonSerialize(using = Money.Serializer.class)
+	@JsonDeserialize(using = Money.Deserializer.class)
+	private long unitPriceCents;
+
+	@Column(nullable = false)
+	@JsonProperty
+	private int quantity;
+
+	public OrderLine() {
+	}
+
+	public OrderLine(Long itemId, String name, long unitPriceCents, int quantity) {
+		this.itemId = itemId;
+		this.name = name;
+		this.unitPriceCents = unitPriceCents;
+		this.quantity = quantity;
+	}
+
+	public static OrderLine of(CartLine line) {
+		Item item = line.getItem();
+		return new OrderLine(item.getId(), item.getName(), item.getPriceCents(), line.getQuantity());
+	}
+
+	public Long getItemId() {
+		return itemId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getUnitPriceCents() {
+		return unitPriceCents;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	@JsonProperty("lineTotal")
+	@JsonSerialize(using = Money.Serializer.class)
+	public long getLineTotalCents() {
+		return Money.times(unitPriceCents, quantity);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof OrderLine)) {
+			return false;
+		}
+		OrderLine other = (OrderLine) obj;
+		return Objects.equals(itemId, other.itemId) && Objects.equals(name, other.name)
+				&& unitPriceCents == other.unitPriceCents && quantity == other.quantity;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(itemId, name, unitPriceCents, quantity);
+	}
+}
@@ -1,46 +1,72 @@
 package com.example.demo.model.persistence;
 
-import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
-import javax.persistence.CascadeType;
+import javax.persistence.CollectionTable;
 import javax.persistence.Column;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
-import javax.persistence.JoinTable;
-import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Parameter;
+
+import com.example.demo.model.Money;
+import com.example.demo.order.OrderEntityListener;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 @Entity
-@Table(name = "user_order")
+@EntityListeners(OrderEntityListener.class)
+@Table(name = "user_order", indexes = @Index(name = "idx_user_order_user", columnList = "user_id, id"))
 public class UserOrder {
 
+	// sequence ids so orders written together can share one JDBC batch; the
+	// order pipeline reserves blocks from the same sequence for queued orders
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "order_seq")
+	@GenericGenerator(name = "order_seq", strategy = "com.example.demo.order.PreassignedSequenceGenerator", parameters = {
+			@Parameter(name = "sequence_name", value = "order_seq"),
+			@Parameter(name = "increment_size", value = "50"),
+			@Parameter(name = "optimizer", value = "pooled-lo") })
 	@JsonProperty
 	@Column
 	private Long id;
 	
-	@ManyToMany(cascade = CascadeType.ALL)
+	// written once with the order; lines of several orders load in one query
+	@ElementCollection
+	@CollectionTable(name = "order_line", joinColumns = @JoinColumn(name = "order_id", nullable = false),
+			indexes = @Index(name = "idx_order_line_order", columnList = "order_id"))
+	@Immutable
+	@BatchSize(size = 50)
 	@JsonProperty
-	@Column
-    private List<Item> items;
+	private List<OrderLine> lines = new ArrayList<>();
 	
 	@ManyToOne
 	@JoinColumn(name="user_id", nullable = false, referencedColumnName = "id")
 	@JsonProperty
     private User user;
 	
+	@JsonProperty("total")
+	@JsonSerialize(using = Money.Serializer.class)
+	@JsonDeserialize(using = Money.Deserializer.class)
+	@Column(name = "total_cents", nullable = false)
+	private long totalCents;
+
+	@Column(name = "created_at", nullable = false)
 	@JsonProperty
-	@Column
-	private BigDecimal total;
+	private Instant createdAt;
 
 	public Long getId() {
 		return id;
@@ -50,12 +76,12 @@ public class UserOrder {
 		this.id = id;
 	}
 
-	public List<Item> getItems() {
-		return items;
+	public List<OrderLine> getLines() {
+		return lines;
 	}
 
-	public void setItems(List<Item> items) {
-		this.items = items;
+	public void setLines(List<OrderLine> lines) {
+		this.lines = lines;
 	}
 
 	public User getUser() {
@@ -66,19 +92,40 @@ public class UserOrder {
 		this.user = user;
 	}
 	
-	public BigDecimal getTotal() {
-		return total;
+	public long getTotalCents() {
+		return totalCents;
+	}
+
+	public void setTotalCents(long totalCents) {
+		this.totalCents = totalCents;
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
 	}
 
-	public void setTotal(BigDecimal total) {
-		this.total = total;
+	public void setCreatedAt(Instant createdAt) {
+		this.createdAt = createdAt;
 	}
 
+	/**
+	 * Snapshots the cart's lines at their current prices. The total is the
+	 * sum of those lines rather than the cart's running total, which was
+	 * accumulated at the prices items had when they were added.
+	 */
 	public static UserOrder createFromCart(Cart cart) {
 		UserOrder order = new UserOrder();
-		order.setItems(cart.getItems().stream().collect(Collectors.toList()));
-		order.setTotal(cart.getTotal());
+		List<OrderLine> lines = new ArrayList<>(cart.getLines().size());
+		long totalCents = 0;
+		for(CartLine line : cart.getLines()) {
+			OrderLine orderLine = OrderLine.of(line);
+			lines.add(orderLine);
+			totalCents = Money.plus(totalCents, orderLine.getLineTotalCents());
+		}
+		order.setLines(lines);
+		order.setTotalCents(totalCents);
 		order.setUser(cart.getUser());
+		order.setCreatedAt(Instant.now());
 		return order;
 	}
 	
@@ -0,0 +1,78 @@
+package com.example.demo.model.persistence;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import com.example.demo.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Running totals of a user's orders, one row per user that has ordered.
+ * Rows are only changed by the statements in
+ * {@link com.example.demo.model.persistence.repositories.UserOrderStatsRepository}.
+ */
+@Entity
+@Table(name = "user_order_stats")
+public class UserOrderStats {
+
+	@Id
+	@Column(name = "user_id")
+	@JsonIgnore
+	private Long userId;
+
+	@Column(name = "order_count", nullable = false)
+	@JsonProperty
+	private long orderCount;
+
+	@Column(name = "total_spent_cents", nullable = false)
+	@JsonProperty("totalSpent")
+	@JsonSerialize(using = Money.Serializer.class)
+	@JsonDeserialize(using = Money.Deserializer.class)
+	private long totalSpentCents;
+
+	@Column(name = "last_order_at")
+	@JsonProperty
+	private Instant lastOrderAt;
+
+	public UserOrderStats() {
+	}
+
+	public UserOrderStats(Long userId) {
+		this.userId = userId;
+	}
+
+	public Long getUserId() {
+		return userId;
+	}
+
+	public long getOrderCount() {
+		return orderCount;
+	}
+
+	public void setOrderCount(long orderCount) {
+		this.orderCount = orderCount;
+	}
+
+	public long getTotalSpentCents() {
+		return totalSpentCents;
+	}
+
+	public void setTotalSpentCents(long totalSpentCents) {
+		this.totalSpentCents = totalSpentCents;
+	}
+
+	public Instant getLastOrderAt() {
+		return lastOrderAt;
+	}
+
+	public void setLastOrderAt(Instant lastOrderAt) {
+		this.lastOrderAt = lastOrderAt;
+	}
+}
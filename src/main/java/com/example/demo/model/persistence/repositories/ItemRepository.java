@@ -1,12 +1,34 @@
 package com.example.demo.model.persistence.repositories;
 
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import com.example.demo.model.persistence.Item;
 
 public interface ItemRepository extends JpaRepository<Item, Long> {
 	public List<Item> findByName(String name);
 
+	/**
+	 * One keyset page: the items after the given id, in id order. Only the
+	 * page size of the pageable is meant to be used, the offset stays 0.
+	 */
+	public List<Item> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+	/**
+	 * All items in id order as a cursor-backed stream. Must be consumed and
+	 * closed inside a transaction.
+	 */
+	@QueryHints({
+			@QueryHint(name = "org.hibernate.fetchSize", value = "500"),
+			@QueryHint(name = "org.hibernate.readOnly", value = "true") })
+	@Query("select i from Item i order by i.id")
+	public Stream<Item> streamAllOrderById();
+
 }
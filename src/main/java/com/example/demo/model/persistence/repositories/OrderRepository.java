@@ -2,11 +2,24 @@ package com.example.demo.model.persistence.repositories;
 
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.OrderSummary;
 
 public interface OrderRepository extends JpaRepository<UserOrder, Long> {
-	List<UserOrder> findByUser(User user);
+
+	/**
+	 * One keyset page of a user's orders with an id below {@code before},
+	 * newest first, as summaries. Only the page size of the pageable is meant
+	 * to be used, the offset stays 0.
+	 */
+	@Query("select new com.example.demo.model.responses.OrderSummary(o.id, o.createdAt, o.totalCents, size(o.lines)) "
+			+ "from UserOrder o where o.user.id = :userId and o.id < :before order by o.id desc")
+	List<OrderSummary> findSummaries(@Param("userId") long userId, @Param("before") long before, Pageable pageable);
+
+	UserOrder findByIdAndUserId(Long id, long userId);
 }
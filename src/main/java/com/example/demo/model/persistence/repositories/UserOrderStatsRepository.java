@@ -0,0 +1,25 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.demo.model.persistence.UserOrderStats;
+
+public interface UserOrderStatsRepository extends JpaRepository<UserOrderStats, Long> {
+
+	/**
+	 * Adds one order to the user's totals in place and returns the number of
+	 * rows changed, 0 if the user has no row yet.
+	 */
+	@Modifying
+	@Query("update UserOrderStats s set s.orderCount = s.orderCount + 1, "
+			+ "s.totalSpentCents = s.totalSpentCents + :totalCents, "
+			+ "s.lastOrderAt = case when s.lastOrderAt is null or s.lastOrderAt < :placedAt then :placedAt else s.lastOrderAt end "
+			+ "where s.userId = :userId")
+	int addOrder(@Param("userId") long userId, @Param("totalCents") long totalCents,
+			@Param("placedAt") Instant placedAt);
+}
@@ -1,9 +1,17 @@
 package com.example.demo.model.persistence.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.User;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 	User findByUsername(String username);
+
+	/**
+	 * The id of the user's cart, read without loading the user or the cart.
+	 */
+	@Query("select u.cart.id from User u where u.username = :username")
+	Long findCartIdByUsername(@Param("username") String username);
 }
@@ -0,0 +1,135 @@
+package com.example.demo.model.responses;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.example.demo.model.Money;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * The part of a cart touched by a mutation: the new quantity of every changed
+ * item (0 when the item left the cart) and the new cart total.
+ */
+public class CartDelta {
+
+	@JsonProperty
+	private Long cartId;
+
+	@JsonProperty
+	private Long version;
+
+	@JsonProperty
+	private String etag;
+
+	@JsonProperty("total")
+	@JsonSerialize(using = Money.Serializer.class)
+	@JsonDeserialize(using = Money.Deserializer.class)
+	private long totalCents;
+
+	@JsonProperty
+	private List<Line> lines;
+
+	public static class Line {
+
+		@JsonProperty
+		private long itemId;
+
+		@JsonProperty
+		private int quantity;
+
+		@JsonProperty("lineTotal")
+		@JsonSerialize(using = Money.Serializer.class)
+		@JsonDeserialize(using = Money.Deserializer.class)
+		private long lineTotalCents;
+
+		public long getItemId() {
+			return itemId;
+		}
+
+		public void setItemId(long itemId) {
+			this.itemId = itemId;
+		}
+
+		public int getQuantity() {
+			return quantity;
+		}
+
+		public void setQuantity(int quantity) {
+			this.quantity = quantity;
+		}
+
+		public long getLineTotalCents() {
+			return lineTotalCents;
+		}
+
+		public void setLineTotalCents(long lineTotalCents) {
+			this.lineTotalCents = lineTotalCents;
+		}
+	}
+
+	public static CartDelta of(Cart cart, Collection<Long> changedItemIds, String etag) {
+		CartDelta delta = new CartDelta();
+		delta.setCartId(cart.getId());
+		delta.setVersion(cart.getVersion());
+		delta.setEtag(etag);
+		delta.setTotalCents(cart.getTotalCents());
+		List<Line> lines = new ArrayList<>(changedItemIds.size());
+		for(Long itemId : changedItemIds) {
+			CartLine cartLine = cart.getLine(itemId);
+			Line line = new Line();
+			line.setItemId(itemId);
+			if(cartLine != null) {
+				line.setQuantity(cartLine.getQuantity());
+				line.setLineTotalCents(cartLine.getLineTotalCents());
+			}
+			lines.add(line);
+		}
+		delta.setLines(lines);
+		return delta;
+	}
+
+	public Long getCartId() {
+		return cartId;
+	}
+
+	public void setCartId(Long cartId) {
+		this.cartId = cartId;
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+
+	public String getEtag() {
+		return etag;
+	}
+
+	public void setEtag(String etag) {
+		this.etag = etag;
+	}
+
+	public long getTotalCents() {
+		return totalCents;
+	}
+
+	public void setTotalCents(long totalCents) {
+		this.totalCents = totalCents;
+	}
+
+	public List<Line> getLines() {
+		return lines;
+	}
+
+	public void setLines(List<Line> lines) {
+		this.lines = lines;
+	}
+}
@@ -0,0 +1,43 @@
+package com.example.demo.model.responses;
+
+import java.util.List;
+
+import com.example.demo.model.persistence.Item;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One page of the catalog in id order. {@code nextAfter} is the cursor for
+ * the following page and is null on the last page.
+ */
+public class ItemPage {
+
+	@JsonProperty
+	private List<Item> items;
+
+	@JsonProperty
+	private Long nextAfter;
+
+	public ItemPage() {
+	}
+
+	public ItemPage(List<Item> items, Long nextAfter) {
+		this.items = items;
+		this.nextAfter = nextAfter;
+	}
+
+	public List<Item> getItems() {
+		return items;
+	}
+
+	public void setItems(List<Item> items) {
+		this.items = items;
+	}
+
+	public Long getNextAfter() {
+		return nextAfter;
+	}
+
+	public void setNextAfter(Long nextAfter) {
+		this.nextAfter = nextAfter;
+	}
+}
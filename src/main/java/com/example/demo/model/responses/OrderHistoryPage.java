@@ -0,0 +1,34 @@
+package com.example.demo.model.responses;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One page of a user's orders, newest first. {@code nextBefore} is the
+ * cursor for the following page and is null on the last page.
+ */
+public class OrderHistoryPage {
+
+	@JsonProperty
+	private List<OrderSummary> orders;
+
+	@JsonProperty
+	private Long nextBefore;
+
+	public OrderHistoryPage() {
+	}
+
+	public OrderHistoryPage(List<OrderSummary> orders, Long nextBefore) {
+		this.orders = orders;
+		this.nextBefore = nextBefore;
+	}
+
+	public List<OrderSummary> getOrders() {
+		return orders;
+	}
+
+	public Long getNextBefore() {
+		return nextBefore;
+	}
+}
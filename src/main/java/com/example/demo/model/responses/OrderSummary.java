@@ -0,0 +1,55 @@
+package com.example.demo.model.responses;
+
+import java.time.Instant;
+
+import com.example.demo.model.Money;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * One row of a user's order history, read as a query projection without
+ * loading the order, its lines or its user.
+ */
+public class OrderSummary {
+
+	@JsonProperty
+	private Long id;
+
+	@JsonProperty
+	private Instant createdAt;
+
+	@JsonProperty("total")
+	@JsonSerialize(using = Money.Serializer.class)
+	@JsonDeserialize(using = Money.Deserializer.class)
+	private long totalCents;
+
+	@JsonProperty
+	private int lineCount;
+
+	public OrderSummary() {
+	}
+
+	public OrderSummary(Long id, Instant createdAt, long totalCents, int lineCount) {
+		this.id = id;
+		this.createdAt = createdAt;
+		this.totalCents = totalCents;
+		this.lineCount = lineCount;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+
+	public long getTotalCents() {
+		return totalCents;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+}
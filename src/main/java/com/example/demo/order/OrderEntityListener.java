@@ -0,0 +1,28 @@
+package com.example.demo.order;
+
+import javax.persistence.PrePersist;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.example.demo.model.persistence.UserOrder;
+
+/**
+ * JPA callback for {@link UserOrder} that publishes an
+ * {@link OrderPlacedEvent} as soon as an order is persisted, so listeners
+ * bound to the transaction still run before it commits. Hibernate creates
+ * this listener through Spring, which injects the publisher.
+ */
+public class OrderEntityListener {
+
+	@Autowired
+	private ApplicationEventPublisher publisher;
+
+	@PrePersist
+	public void orderPlaced(UserOrder order) {
+		if(publisher != null) {
+			publisher.publishEvent(new OrderPlacedEvent(order.getUser().getId(), order.getTotalCents(),
+					order.getCreatedAt()));
+		}
+	}
+}
@@ -0,0 +1,241 @@
+package com.example.demo.order;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.Money;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes orders in a creation time and id range for reconciliation, as
+ * newline-delimited JSON (one order with its lines per line) or CSV (one
+ * order line per row, and one row with empty line columns for an order
+ * without lines).
+ * <p>
+ * Rows come from a forward-only, read-only JDBC cursor with a fetch size
+ * and are written as they are read, one order at a time, so memory use does
+ * not depend on the size of the export. Orders are written in id order;
+ * the last id written can be passed as {@code afterId} to resume a broken
+ * export.
+ */
+@Component
+public class OrderExporter {
+
+	private static final Logger log = LoggerFactory.getLogger(OrderExporter.class);
+
+	public enum Format {
+		NDJSON, CSV
+	}
+
+	private static final String EXPORT_SQL =
+			"select o.id, o.created_at, u.username, o.total_cents, l.item_id, l.name, l.unit_price_cents, l.quantity "
+			+ "from user_order o join user u on u.id = o.user_id left join order_line l on l.order_id = o.id "
+			+ "where o.id > ? and o.created_at >= ? and o.created_at < ? order by o.id";
+
+	private static final String CSV_HEADER = "order_id,created_at,username,total,item_id,name,price,quantity\n";
+
+	private static final Timestamp NO_LOWER_BOUND = new Timestamp(0);
+
+	private static final Timestamp NO_UPPER_BOUND = Timestamp.valueOf("9999-12-31 00:00:00");
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${order.export.fetch-size:500}")
+	private int fetchSize;
+
+	/**
+	 * Writes the orders with an id greater than {@code afterId} created in
+	 * [{@code from}, {@code to}); null bounds are open. Returns the number of
+	 * orders written.
+	 */
+	public long export(OutputStream out, Format format, Instant from, Instant to, long afterId) throws IOException {
+		long start = System.nanoTime();
+		OrderWriter writer = format == Format.CSV ? new CsvWriter(out) : new NdjsonWriter(out);
+		try {
+			jdbcTemplate.query(connection -> {
+				PreparedStatement statement = connection.prepareStatement(EXPORT_SQL, ResultSet.TYPE_FORWARD_ONLY,
+						ResultSet.CONCUR_READ_ONLY);
+				statement.setFetchSize(fetchSize);
+				statement.setLong(1, afterId);
+				statement.setTimestamp(2, from == null ? NO_LOWER_BOUND : Timestamp.from(from));
+				statement.setTimestamp(3, to == null ? NO_UPPER_BOUND : Timestamp.from(to));
+				return statement;
+			}, writer);
+			writer.finish();
+		} catch(UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+		log.info("Exported " + writer.orders + " orders as " + format + " in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+		return writer.orders;
+	}
+
+	/**
+	 * Receives the joined order and line rows in order id order and writes
+	 * each order when its first row arrives.
+	 */
+	private abstract static class OrderWriter implements RowCallbackHandler {
+
+		private long currentOrderId = -1;
+
+		private long orders;
+
+		@Override
+		public void processRow(ResultSet rs) throws SQLException {
+			try {
+				long orderId = rs.getLong(1);
+				if(orderId != currentOrderId) {
+					if(currentOrderId != -1) {
+						endOrder();
+					}
+					currentOrderId = orderId;
+					orders++;
+					startOrder(orderId, rs.getTimestamp(2).toInstant(), rs.getString(3), rs.getLong(4));
+				}
+				long itemId = rs.getLong(5);
+				if(!rs.wasNull()) {
+					line(itemId, rs.getString(6), rs.getLong(7), rs.getInt(8));
+				}
+			} catch(IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		void finish() throws IOException {
+			if(currentOrderId != -1) {
+				endOrder();
+			}
+			close();
+		}
+
+		abstract void startOrder(long id, Instant createdAt, String username, long totalCents) throws IOException;
+
+		abstract void line(long itemId, String name, long unitPriceCents, int quantity) throws IOException;
+
+		abstract void endOrder() throws IOException;
+
+		abstract void close() throws IOException;
+	}
+
+	private class NdjsonWriter extends OrderWriter {
+
+		private final JsonGenerator gen;
+
+		private NdjsonWriter(OutputStream out) throws IOException {
+			gen = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+			gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			gen.setRootValueSeparator(null);
+		}
+
+		@Override
+		void startOrder(long id, Instant createdAt, String username, long totalCents) throws IOException {
+			gen.writeStartObject();
+			gen.writeNumberField("id", id);
+			gen.writeStringField("createdAt", createdAt.toString());
+			gen.writeStringField("username", username);
+			gen.writeFieldName("total");
+			gen.writeNumber(Money.format(totalCents));
+			gen.writeArrayFieldStart("lines");
+		}
+
+		@Override
+		void line(long itemId, String name, long unitPriceCents, int quantity) throws IOException {
+			gen.writeStartObject();
+			gen.writeNumberField("itemId", itemId);
+			gen.writeStringField("name", name);
+			gen.writeFieldName("price");
+			gen.writeNumber(Money.format(unitPriceCents));
+			gen.writeNumberField("quantity", quantity);
+			gen.writeEndObject();
+		}
+
+		@Override
+		void endOrder() throws IOException {
+			gen.writeEndArray();
+			gen.writeEndObject();
+			gen.writeRaw('\n');
+		}
+
+		@Override
+		void close() throws IOException {
+			gen.close();
+		}
+	}
+
+	private static class CsvWriter extends OrderWriter {
+
+		private final Writer out;
+
+		private String order;
+
+		private boolean hasLines;
+
+		private CsvWriter(OutputStream out) throws IOException {
+			this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+			this.out.write(CSV_HEADER);
+		}
+
+		@Override
+		void startOrder(long id, Instant createdAt, String username, long totalCents) {
+			order = id + "," + createdAt + "," + csvField(username) + "," + Money.format(totalCents) + ",";
+			hasLines = false;
+		}
+
+		@Override
+		void line(long itemId, String name, long unitPriceCents, int quantity) throws IOException {
+			out.write(order);
+			out.write(itemId + "," + csvField(name) + "," + Money.format(unitPriceCents) + "," + quantity + "\n");
+			hasLines = true;
+		}
+
+		@Override
+		void endOrder() throws IOException {
+			if(!hasLines) {
+				out.write(order);
+				out.write(",,,\n");
+			}
+		}
+
+		@Override
+		void close() throws IOException {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Quotes a field if it contains a separator, quote or line break.
+	 */
+	static String csvField(String value) {
+		if(value == null) {
+			return "";
+		}
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+}
@@ -0,0 +1,75 @@
+package com.example.demo.order;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.responses.OrderSummary;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Caches the newest {@value #DEPTH} order summaries per user, which answer
+ * the first history page for any page size up to that depth. Older pages go
+ * to the database.
+ * <p>
+ * A user's entry is dropped when one of their orders commits, whichever
+ * path wrote it. Concurrent misses for the same user share one query.
+ */
+@Component
+public class OrderHistoryCache {
+
+	static final int DEPTH = 100;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private final BoundedCache<Long, List<OrderSummary>> recent;
+
+	public OrderHistoryCache(@Value("${order.history-cache.max-users:10000}") int maxUsers,
+			@Value("${order.history-cache.ttl-seconds:600}") long ttlSeconds) {
+		this.recent = new BoundedCache<>("orders.history", maxUsers, ttlSeconds, TimeUnit.SECONDS);
+	}
+
+	@PostConstruct
+	public void bindMetrics() {
+		if(meterRegistry != null) {
+			recent.bindTo(meterRegistry);
+		}
+	}
+
+	/**
+	 * The user's newest {@code limit} orders, or null if the limit is deeper
+	 * than the cache keeps.
+	 */
+	public List<OrderSummary> firstPage(long userId, int limit) {
+		if(limit > DEPTH) {
+			return null;
+		}
+		List<OrderSummary> orders = recent.get(userId, id -> Collections.unmodifiableList(
+				orderRepository.findSummaries(id, Long.MAX_VALUE, PageRequest.of(0, DEPTH))));
+		return orders.size() <= limit ? orders : orders.subList(0, limit);
+	}
+
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onOrderPlaced(OrderPlacedEvent event) {
+		recent.invalidate(event.getUserId());
+	}
+
+	public BoundedCache<Long, List<OrderSummary>> getCache() {
+		return recent;
+	}
+}
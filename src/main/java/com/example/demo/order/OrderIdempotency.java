@@ -0,0 +1,173 @@
+package com.example.demo.order;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.cache.BoundedCache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Remembers which order an order submission created per
+ * {@code Idempotency-Key} so a retried request gets the original order back
+ * instead of creating another one.
+ * <p>
+ * Keys are scoped to the user and kept in a bounded store for a limited
+ * time. Only a reference to what the submission created is kept, and a
+ * replay reads it again, so a retry sees the order's current state and the
+ * store does not hold whole responses. A request whose key is already being
+ * processed waits for that attempt, up to {@code order.idempotency.wait-ms},
+ * and shares its outcome, so concurrent retries create one order; if the
+ * attempt takes longer the retry is answered 409 and may try again. Only
+ * successful submissions are remembered; after an error or a failed attempt
+ * the key can be used again. The store is local to the node, so retries are
+ * only recognised when they reach the same node.
+ */
+@Component
+public class OrderIdempotency {
+
+	private static final Logger log = LoggerFactory.getLogger(OrderIdempotency.class);
+
+	public static final String HEADER = "Idempotency-Key";
+
+	public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+	public static final int MAX_KEY_LENGTH = 255;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	@Value("${order.idempotency.wait-ms:5000}")
+	private long waitMillis = 5000;
+
+	private final BoundedCache<String, String> completed;
+
+	private final Map<String, CompletableFuture<Outcome>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * What a finished attempt leaves for the requests that waited on it:
+	 * the reference of a successful submission or the response of an
+	 * unsuccessful one.
+	 */
+	private static class Outcome {
+		private final String reference;
+		private final ResponseEntity<?> failure;
+
+		private Outcome(String reference, ResponseEntity<?> failure) {
+			this.reference = reference;
+			this.failure = failure;
+		}
+	}
+
+	public OrderIdempotency(@Value("${order.idempotency.max-keys:100000}") int maxKeys,
+			@Value("${order.idempotency.ttl-hours:24}") long ttlHours) {
+		this.completed = new BoundedCache<>("orders.idempotency", maxKeys, ttlHours, TimeUnit.HOURS);
+	}
+
+	@PostConstruct
+	public void bindMetrics() {
+		if(meterRegistry != null) {
+			completed.bindTo(meterRegistry);
+		}
+	}
+
+	public static boolean isValidKey(String key) {
+		return key != null && !key.isEmpty() && key.length() <= MAX_KEY_LENGTH;
+	}
+
+	/**
+	 * Runs the submission unless the key was already used in this scope, in
+	 * which case the response is rebuilt by {@code replay} from the reference
+	 * that {@code reference} took from the original response body, and
+	 * returned with {@value #REPLAYED_HEADER} set. The scope is the user,
+	 * plus the endpoint when the user can submit through more than one.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> ResponseEntity<T> submit(String scope, String key, Supplier<ResponseEntity<T>> submission,
+			Function<T, String> reference, Function<String, ResponseEntity<T>> replay) {
+		String scopedKey = scope + '\n' + key;
+		String done = completed.getIfPresent(scopedKey);
+		if(done != null) {
+			return replayed(replay.apply(done));
+		}
+		CompletableFuture<Outcome> attempt = new CompletableFuture<>();
+		CompletableFuture<Outcome> running = inFlight.putIfAbsent(scopedKey, attempt);
+		if(running != null) {
+			log.info("Order submission with a key in progress, waiting for it");
+			Outcome outcome = await(running);
+			if(outcome == null) {
+				log.warn("Order submission with a key still in progress after " + waitMillis + " ms");
+				return ResponseEntity.status(HttpStatus.CONFLICT).header(HttpHeaders.RETRY_AFTER, "1").build();
+			}
+			return replayed(outcome.reference != null ? replay.apply(outcome.reference)
+					: (ResponseEntity<T>) outcome.failure);
+		}
+		try {
+			// the first attempt may have finished between the lookup and claiming the key
+			done = completed.getIfPresent(scopedKey);
+			if(done != null) {
+				attempt.complete(new Outcome(done, null));
+				return replayed(replay.apply(done));
+			}
+			ResponseEntity<T> response = submission.get();
+			if(response.getStatusCode().is2xxSuccessful()) {
+				String created = reference.apply(response.getBody());
+				completed.put(scopedKey, created);
+				attempt.complete(new Outcome(created, null));
+			} else {
+				attempt.complete(new Outcome(null, response));
+			}
+			return response;
+		} catch(RuntimeException | Error ex) {
+			attempt.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			inFlight.remove(scopedKey, attempt);
+		}
+	}
+
+	/**
+	 * The outcome of the running attempt, or null if it did not finish in time.
+	 */
+	private Outcome await(CompletableFuture<Outcome> running) {
+		try {
+			return running.get(waitMillis, TimeUnit.MILLISECONDS);
+		} catch(TimeoutException ex) {
+			return null;
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for an order submission", ex);
+		} catch(ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new CompletionException(cause);
+		}
+	}
+
+	private static <T> ResponseEntity<T> replayed(ResponseEntity<T> response) {
+		return ResponseEntity.status(response.getStatusCode())
+				.headers(response.getHeaders())
+				.header(REPLAYED_HEADER, "true")
+				.body(response.getBody());
+	}
+}
@@ -0,0 +1,237 @@
+package com.example.demo.order;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.cache.BoundedCache;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+
+/**
+ * Optional asynchronous path for order submission. With
+ * {@code order.pipeline.enabled=true} submitted orders go into a bounded
+ * queue and a single writer thread persists whatever has queued up, up to
+ * {@code order.pipeline.max-batch} orders, in one transaction, so the number
+ * of commits grows with load much more slowly than the number of orders.
+ * <p>
+ * Each queued order gets its id right away, reserved from {@code order_seq}
+ * in the same blocks of 50 that Hibernate's pooled-lo optimizer uses, so
+ * the submission can name the order before it is written. The orders are
+ * saved with {@link Session#save}, which unlike {@code persist} accepts an
+ * entity that already has its id.
+ * <p>
+ * If a batch fails, its orders are retried one transaction each so a single
+ * bad order cannot fail the rest. The outcome of every submission is kept
+ * for a while for clients to poll. Orders still queued at shutdown are
+ * written before the application stops.
+ */
+@Component
+public class OrderPipeline {
+
+	private static final Logger log = LoggerFactory.getLogger(OrderPipeline.class);
+
+	private static final String NEXT_ID_BLOCK_SQL = "select next value for order_seq";
+
+	// must match the increment_size of the order id generator
+	private static final int ID_BLOCK_SIZE = 50;
+
+	@Autowired(required = false)
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Autowired(required = false)
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${order.pipeline.enabled:false}")
+	private boolean enabled;
+
+	@Value("${order.pipeline.queue-capacity:10000}")
+	private int queueCapacity;
+
+	@Value("${order.pipeline.max-batch:200}")
+	private int maxBatch;
+
+	private final BoundedCache<String, OrderSubmission> submissions =
+			new BoundedCache<>("orders.submissions", 100000, 1, TimeUnit.HOURS);
+
+	private BlockingQueue<PendingOrder> queue;
+
+	private Thread writer;
+
+	private volatile boolean running;
+
+	private long nextId;
+
+	private long idBlockEnd;
+
+	private static class PendingOrder {
+		private final OrderSubmission submission;
+		private final UserOrder order;
+		private final long userId;
+
+		private PendingOrder(OrderSubmission submission, UserOrder order) {
+			this.submission = submission;
+			this.order = order;
+			this.userId = order.getUser().getId();
+		}
+	}
+
+	@PostConstruct
+	public void start() {
+		if(!enabled) {
+			return;
+		}
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		running = true;
+		writer = new Thread(this::runWriter, "order-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if(writer == null) {
+			return;
+		}
+		running = false;
+		writer.join(TimeUnit.SECONDS.toMillis(30));
+		if(writer.isAlive()) {
+			log.warn("Order writer did not finish, " + queue.size() + " queued orders are lost");
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Gives the order its id and queues it, or returns null if the queue is
+	 * full.
+	 */
+	public OrderSubmission enqueue(UserOrder order) {
+		order.setId(nextId());
+		OrderSubmission submission = new OrderSubmission(order.getUser().getUsername(), order.getTotalCents(),
+				order.getId());
+		submissions.put(submission.getId(), submission);
+		if(!running || !queue.offer(new PendingOrder(submission, order))) {
+			submissions.invalidate(submission.getId());
+			return null;
+		}
+		return submission;
+	}
+
+	/**
+	 * Records an order that was already saved, for callers that fall back to
+	 * the synchronous path.
+	 */
+	public OrderSubmission completed(UserOrder order) {
+		OrderSubmission submission = new OrderSubmission(order.getUser().getUsername(), order.getTotalCents(),
+				order.getId());
+		submission.completed();
+		submissions.put(submission.getId(), submission);
+		return submission;
+	}
+
+	public OrderSubmission getSubmission(String id) {
+		return submissions.getIfPresent(id);
+	}
+
+	public int getQueueSize() {
+		return queue == null ? 0 : queue.size();
+	}
+
+	private void runWriter() {
+		List<PendingOrder> batch = new ArrayList<>(maxBatch);
+		while(running || !queue.isEmpty()) {
+			try {
+				PendingOrder first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatch - 1);
+				write(batch);
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch(RuntimeException ex) {
+				log.error("Order writer failed on a batch of " + batch.size(), ex);
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void write(List<PendingOrder> batch) {
+		try {
+			persist(batch);
+		} catch(RuntimeException ex) {
+			if(batch.size() == 1) {
+				PendingOrder pending = batch.get(0);
+				log.warn("Order submission " + pending.submission.getId() + " failed: " + ex.getMessage());
+				pending.submission.failed("The order could not be saved");
+				return;
+			}
+			log.warn("Order batch of " + batch.size() + " failed, retrying one by one");
+			for(PendingOrder pending : batch) {
+				write(Collections.singletonList(pending));
+			}
+			return;
+		}
+		for(PendingOrder pending : batch) {
+			pending.submission.completed();
+		}
+		log.info("Order batch of " + batch.size() + " committed");
+	}
+
+	/**
+	 * Hands out ids from the current block, reserving the next block from the
+	 * sequence when it runs out.
+	 */
+	private synchronized long nextId() {
+		if(nextId >= idBlockEnd) {
+			nextId = jdbcTemplate.queryForObject(NEXT_ID_BLOCK_SQL, Long.class);
+			idBlockEnd = nextId + ID_BLOCK_SIZE;
+		}
+		return nextId++;
+	}
+
+	/**
+	 * Saves the orders in one transaction. The orders were built from
+	 * entities of the submitting request, so the user is swapped for a
+	 * reference of the writer's own persistence context first. A retry after
+	 * a failed batch saves them again under the same ids.
+	 */
+	private void persist(List<PendingOrder> batch) {
+		new TransactionTemplate(transactionManager).execute(status -> {
+			Session session = entityManager.unwrap(Session.class);
+			for(PendingOrder pending : batch) {
+				UserOrder order = pending.order;
+				order.setUser(entityManager.getReference(User.class, pending.userId));
+				session.save(order);
+			}
+			return null;
+		});
+	}
+}
@@ -0,0 +1,34 @@
+package com.example.demo.order;
+
+import java.time.Instant;
+
+/**
+ * Published when a new order is persisted, inside the transaction that
+ * writes it.
+ */
+public class OrderPlacedEvent {
+
+	private final long userId;
+
+	private final long totalCents;
+
+	private final Instant placedAt;
+
+	public OrderPlacedEvent(long userId, long totalCents, Instant placedAt) {
+		this.userId = userId;
+		this.totalCents = totalCents;
+		this.placedAt = placedAt;
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	public long getTotalCents() {
+		return totalCents;
+	}
+
+	public Instant getPlacedAt() {
+		return placedAt;
+	}
+}
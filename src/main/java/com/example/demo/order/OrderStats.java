@@ -0,0 +1,131 @@
+package com.example.demo.order;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.UserOrderStats;
+import com.example.demo.model.persistence.repositories.UserOrderStatsRepository;
+
+/**
+ * Per-user order count, lifetime spend and last order time, kept in
+ * {@code user_order_stats} so reading them is a primary key lookup.
+ * <p>
+ * Every persisted order adds itself to its user's row right before its
+ * transaction commits, so the totals commit or roll back together with the
+ * order on both the synchronous and the pipelined submit path. The first
+ * order of a user inserts the row under a savepoint; if a concurrent first
+ * order of the same user inserted it meanwhile, only the savepoint is rolled
+ * back and the order is added to that row instead.
+ * <p>
+ * {@link #rebuild()} recomputes all rows from {@code user_order}, split by
+ * user id into partitions that are recomputed in parallel, one transaction
+ * each. Orders submitted for a partition while it is being rebuilt may fail
+ * and can be retried.
+ */
+@Component
+public class OrderStats {
+
+	private static final Logger log = LoggerFactory.getLogger(OrderStats.class);
+
+	private static final String DELETE_PARTITION_SQL = "delete from user_order_stats where mod(user_id, ?) = ?";
+
+	private static final String INSERT_FIRST_ORDER_SQL =
+			"insert into user_order_stats (user_id, order_count, total_spent_cents, last_order_at) values (?, 1, ?, ?)";
+
+	private static final String REBUILD_PARTITION_SQL =
+			"insert into user_order_stats (user_id, order_count, total_spent_cents, last_order_at) "
+			+ "select user_id, count(*), sum(total_cents), max(created_at) from user_order "
+			+ "where mod(user_id, ?) = ? group by user_id";
+
+	@Autowired
+	private UserOrderStatsRepository statsRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${order.stats.rebuild-partitions:4}")
+	private int rebuildPartitions;
+
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+	public void onOrderPlaced(OrderPlacedEvent event) {
+		if(statsRepository.addOrder(event.getUserId(), event.getTotalCents(), event.getPlacedAt()) > 0) {
+			return;
+		}
+		// plain JDBC so a duplicate key only rolls back the savepoint, not the order's transaction
+		TransactionTemplate savepoint = new TransactionTemplate(transactionManager);
+		savepoint.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+		try {
+			savepoint.execute(status -> jdbcTemplate.update(INSERT_FIRST_ORDER_SQL, event.getUserId(),
+					event.getTotalCents(), Timestamp.from(event.getPlacedAt())));
+		} catch(DuplicateKeyException ex) {
+			log.info("Order stats row of user " + event.getUserId() + " was created concurrently, updating it");
+			statsRepository.addOrder(event.getUserId(), event.getTotalCents(), event.getPlacedAt());
+		}
+	}
+
+	/**
+	 * The user's totals; all zero if the user has not ordered yet.
+	 */
+	public UserOrderStats get(long userId) {
+		return statsRepository.findById(userId).orElseGet(() -> new UserOrderStats(userId));
+	}
+
+	/**
+	 * Recomputes every user's totals and returns the number of users that
+	 * have orders.
+	 */
+	public synchronized int rebuild() throws InterruptedException {
+		long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(rebuildPartitions, runnable -> {
+			Thread thread = new Thread(runnable, "order-stats-rebuild");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<Integer>> partitions = new ArrayList<>(rebuildPartitions);
+			for(int i = 0; i < rebuildPartitions; i++) {
+				int partition = i;
+				partitions.add(executor.submit(() -> rebuildPartition(partition)));
+			}
+			int users = 0;
+			for(Future<Integer> partition : partitions) {
+				users += partition.get();
+			}
+			log.info("Rebuilt order stats of " + users + " users in " + rebuildPartitions + " partitions in "
+					+ (System.nanoTime() - start) / 1000000 + " ms");
+			return users;
+		} catch(ExecutionException ex) {
+			throw new IllegalStateException("Order stats rebuild failed", ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private int rebuildPartition(int partition) {
+		return new TransactionTemplate(transactionManager).execute(status -> {
+			jdbcTemplate.update(DELETE_PARTITION_SQL, rebuildPartitions, partition);
+			return jdbcTemplate.update(REBUILD_PARTITION_SQL, rebuildPartitions, partition);
+		});
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.demo.order;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import com.example.demo.model.Money;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * State of an order handed to the {@link OrderPipeline}, as returned to the
+ * client when it submits and when it polls.
+ */
+public class OrderSubmission {
+
+	public enum Status {
+		QUEUED, COMPLETED, FAILED
+	}
+
+	@JsonProperty
+	private final String id = UUID.randomUUID().toString();
+
+	@JsonIgnore
+	private final String username;
+
+	@JsonProperty("total")
+	@JsonSerialize(using = Money.Serializer.class)
+	private final long totalCents;
+
+	@JsonProperty
+	private final Instant submittedAt = Instant.now();
+
+	@JsonProperty
+	private volatile Status status = Status.QUEUED;
+
+	// reserved when the order is queued, cleared if it could not be written
+	@JsonProperty
+	private volatile Long orderId;
+
+	@JsonProperty
+	private volatile String error;
+
+	public OrderSubmission(String username, long totalCents, Long orderId) {
+		this.username = username;
+		this.totalCents = totalCents;
+		this.orderId = orderId;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public long getTotalCents() {
+		return totalCents;
+	}
+
+	public Instant getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	void completed() {
+		this.status = Status.COMPLETED;
+	}
+
+	void failed(String error) {
+		this.error = error;
+		this.orderId = null;
+		this.status = Status.FAILED;
+	}
+}
@@ -0,0 +1,22 @@
+package com.example.demo.order;
+
+import java.io.Serializable;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/**
+ * Sequence generator that keeps an id the entity already has. The
+ * {@link OrderPipeline} reserves order ids from the same sequence when an
+ * order is queued, so the id can be returned before the order is written;
+ * every other order gets its id here as usual.
+ */
+public class PreassignedSequenceGenerator extends SequenceStyleGenerator {
+
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+		Serializable id = session.getEntityPersister(null, object).getIdentifier(object, session);
+		return id != null ? id : super.generate(session, object);
+	}
+}
@@ -0,0 +1,39 @@
+package com.example.demo.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Login details of a user, with the ids and roles that are signed into the
+ * token issued on a successful login.
+ */
+public class AccountDetails extends User {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long userId;
+
+    private final Long cartId;
+
+    public AccountDetails(String username, String password, long userId, Long cartId) {
+        this(username, password, userId, cartId, Collections.emptyList());
+    }
+
+    public AccountDetails(String username, String password, long userId, Long cartId,
+                          Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.userId = userId;
+        this.cartId = cartId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public Long getCartId() {
+        return cartId;
+    }
+}
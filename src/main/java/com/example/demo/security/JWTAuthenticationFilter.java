@@ -1,13 +1,17 @@
 package com.example.demo.security;
 
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.JWTCreator;
 import com.example.demo.model.persistence.User;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import javax.servlet.FilterChain;
@@ -17,12 +21,16 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilter {
     private AuthenticationManager authenticationManager;
 
-    public JWTAuthenticationFilter(AuthenticationManager authenticationManager) {
+    private final LoginThrottle loginThrottle;
+
+    public JWTAuthenticationFilter(AuthenticationManager authenticationManager, LoginThrottle loginThrottle) {
         this.authenticationManager = authenticationManager;
+        this.loginThrottle = loginThrottle;
     }
 
 
@@ -31,20 +39,46 @@ public class JWTAuthenticationFilter extends UsernamePasswordAuthenticationFilte
         try {
             User credentials = new ObjectMapper()
                     .readValue(request.getInputStream(), User.class);
+            long retryAfter = loginThrottle.acquireForUsername(credentials.getUsername(), request.getRemoteAddr());
+            if(retryAfter > 0) {
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+                return null;
+            }
             return authenticationManager.authenticate(
                     new UsernamePasswordAuthenticationToken(
                             credentials.getUsername(), credentials.getPassword(), new ArrayList<>()));
         } catch(IOException ex) {
             throw new RuntimeException(ex);
+        } catch(PasswordHashingBusyException | InternalAuthenticationServiceException ex) {
+            // a saturated hashing pool may surface wrapped when it happens while checking an unknown user
+            if(!(ex instanceof PasswordHashingBusyException) && !(ex.getCause() instanceof PasswordHashingBusyException)) {
+                throw ex;
+            }
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return null;
         }
     }
 
     @Override
     protected void successfulAuthentication(HttpServletRequest request, HttpServletResponse response, FilterChain chain, Authentication authResult) throws IOException, ServletException {
-        String token = JWT.create()
+        JWTCreator.Builder builder = JWT.create()
                 .withSubject(authResult.getName())
-                .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.EXPIRATION_TIME))
-                .sign(Algorithm.HMAC512(SecurityConstants.SECRET.getBytes()));
+                .withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.EXPIRATION_TIME));
+        if(authResult.getPrincipal() instanceof AccountDetails) {
+            AccountDetails account = (AccountDetails) authResult.getPrincipal();
+            builder.withClaim(JwtPrincipal.USER_ID_CLAIM, account.getUserId())
+                    .withClaim(JwtPrincipal.CART_ID_CLAIM, account.getCartId());
+        }
+        if(!authResult.getAuthorities().isEmpty()) {
+            List<String> roles = new ArrayList<>();
+            for(GrantedAuthority authority : authResult.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            builder.withArrayClaim(JwtPrincipal.ROLES_CLAIM, roles.toArray(new String[0]));
+        }
+        String token = builder.sign(TokenVerifier.ALGORITHM);
         response.addHeader(SecurityConstants.HEADER_STRING, SecurityConstants.TOKEN_PREFIX + token);
     }
 }
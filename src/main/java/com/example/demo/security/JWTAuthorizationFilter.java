@@ -1,9 +1,10 @@
 package com.example.demo.security;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
@@ -13,11 +14,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
 
 public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
 
-    public JWTAuthorizationFilter(AuthenticationManager authenticationManager) {
+    private final TokenVerifier tokenVerifier;
+
+    public JWTAuthorizationFilter(AuthenticationManager authenticationManager, TokenVerifier tokenVerifier) {
         super(authenticationManager);
+        this.tokenVerifier = tokenVerifier;
     }
 
     @Override
@@ -29,25 +34,28 @@ public class JWTAuthorizationFilter extends BasicAuthenticationFilter {
             return;
         }
 
-        UsernamePasswordAuthenticationToken authentication = getAuthentication(request);
+        UsernamePasswordAuthenticationToken authentication = getAuthentication(header);
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
         chain.doFilter(request, response);
     }
 
-    private UsernamePasswordAuthenticationToken getAuthentication(HttpServletRequest request) {
-        String token = request.getHeader(SecurityConstants.HEADER_STRING);
-        if (token != null) {
-            // parse the token.
-            String user = JWT.require(Algorithm.HMAC512(SecurityConstants.SECRET.getBytes()))
-                    .build()
-                    .verify(token.replace(SecurityConstants.TOKEN_PREFIX, ""))
-                    .getSubject();
-
-            if (user != null) {
-                return new UsernamePasswordAuthenticationToken(user, null, new ArrayList<>());
+    private UsernamePasswordAuthenticationToken getAuthentication(String header) {
+        // parse the token.
+        DecodedJWT jwt = tokenVerifier.verify(header.substring(SecurityConstants.TOKEN_PREFIX.length()));
+        String user = jwt.getSubject();
+
+        if (user != null) {
+            JwtPrincipal principal = new JwtPrincipal(user, jwt.getClaim(JwtPrincipal.USER_ID_CLAIM).asLong(),
+                    jwt.getClaim(JwtPrincipal.CART_ID_CLAIM).asLong());
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            List<String> roles = jwt.getClaim(JwtPrincipal.ROLES_CLAIM).asList(String.class);
+            if(roles != null) {
+                for(String role : roles) {
+                    authorities.add(new SimpleGrantedAuthority(role));
+                }
             }
-            return null;
+            return new UsernamePasswordAuthenticationToken(principal, null, authorities);
         }
         return null;
     }
@@ -0,0 +1,77 @@
+package com.example.demo.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.Serializable;
+import java.security.Principal;
+
+/**
+ * The user behind the bearer token of the current request, with the user
+ * and cart ids signed into the token at login. Tokens issued before the ids
+ * were added carry only the username.
+ */
+public class JwtPrincipal implements Principal, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String USER_ID_CLAIM = "uid";
+
+    public static final String CART_ID_CLAIM = "cid";
+
+    public static final String ROLES_CLAIM = "roles";
+
+    private final String username;
+
+    private final Long userId;
+
+    private final Long cartId;
+
+    public JwtPrincipal(String username, Long userId, Long cartId) {
+        this.username = username;
+        this.userId = userId;
+        this.cartId = cartId;
+    }
+
+    /**
+     * The principal of the current request, or null if it was not
+     * authenticated with a token.
+     */
+    public static JwtPrincipal current() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if(authentication == null || !(authentication.getPrincipal() instanceof JwtPrincipal)) {
+            return null;
+        }
+        return (JwtPrincipal) authentication.getPrincipal();
+    }
+
+    /**
+     * The current principal if it is the given user and its token carries the
+     * user id, otherwise null.
+     */
+    public static JwtPrincipal currentFor(String username) {
+        JwtPrincipal principal = current();
+        if(principal == null || principal.userId == null || !principal.username.equals(username)) {
+            return null;
+        }
+        return principal;
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getCartId() {
+        return cartId;
+    }
+
+    @Override
+    public String toString() {
+        return username;
+    }
+}
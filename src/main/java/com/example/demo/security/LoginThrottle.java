@@ -0,0 +1,87 @@
+package com.example.demo.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits for the unauthenticated endpoints that hash a password, login
+ * and sign-up. Each client address gets its own token bucket, checked
+ * before the request body is read, and so does each username per address,
+ * checked before any password is hashed. Keying the username bucket by
+ * address as well keeps guesses from one client from locking the account
+ * owner out on their own address, while the address bucket still bounds
+ * how many usernames a client can try.
+ */
+@Component
+public class LoginThrottle {
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final RateLimiter byAddress;
+
+    private final RateLimiter byUsername;
+
+    public LoginThrottle(@Value("${security.rate-limit.address.per-minute:60}") int addressPerMinute,
+                         @Value("${security.rate-limit.address.burst:20}") int addressBurst,
+                         @Value("${security.rate-limit.username.per-minute:10}") int usernamePerMinute,
+                         @Value("${security.rate-limit.username.burst:5}") int usernameBurst,
+                         @Value("${security.rate-limit.max-keys:100000}") int maxKeys) {
+        this.byAddress = new RateLimiter("address", addressPerMinute, addressBurst, maxKeys);
+        this.byUsername = new RateLimiter("username", usernamePerMinute, usernameBurst, maxKeys);
+    }
+
+    @PostConstruct
+    public void bindMetrics() {
+        if(meterRegistry != null) {
+            byAddress.bindTo(meterRegistry);
+            byUsername.bindTo(meterRegistry);
+        }
+    }
+
+    /**
+     * Takes a permit for the client address. Returns 0 if the request may go
+     * on, otherwise the seconds to put in Retry-After.
+     */
+    public long acquireForAddress(String address) {
+        return retryAfterSeconds(byAddress.tryAcquire(address));
+    }
+
+    /**
+     * Takes a permit for the username, compared case-insensitively, from the
+     * given client address. Returns 0 if the request may go on, otherwise the
+     * seconds to put in Retry-After.
+     */
+    public long acquireForUsername(String username, String address) {
+        String name = username == null ? "" : username.toLowerCase(Locale.ROOT);
+        return retryAfterSeconds(byUsername.tryAcquire(name + '\n' + address));
+    }
+
+    @Scheduled(fixedDelayString = "${security.rate-limit.evict-interval-ms:60000}")
+    public void evictIdle() {
+        byAddress.evictIdle();
+        byUsername.evictIdle();
+    }
+
+    RateLimiter getAddressLimiter() {
+        return byAddress;
+    }
+
+    RateLimiter getUsernameLimiter() {
+        return byUsername;
+    }
+
+    private static long retryAfterSeconds(long waitNanos) {
+        if(waitNanos <= 0) {
+            return 0;
+        }
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+}
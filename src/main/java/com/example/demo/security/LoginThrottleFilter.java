@@ -0,0 +1,49 @@
+package com.example.demo.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Turns away login and sign-up requests from a client address that is over
+ * its rate before the body is parsed or any password is hashed. The address
+ * is the servlet remote address, so behind a proxy the container must be
+ * set up to take it from the forwarded headers.
+ */
+public class LoginThrottleFilter extends OncePerRequestFilter {
+
+    static final String LOGIN_URL = "/login";
+
+    private final LoginThrottle loginThrottle;
+
+    public LoginThrottleFilter(LoginThrottle loginThrottle) {
+        this.loginThrottle = loginThrottle;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if(!HttpMethod.POST.matches(request.getMethod())) {
+            return true;
+        }
+        String path = request.getServletPath();
+        return !LOGIN_URL.equals(path) && !SecurityConstants.SIGN_UP_URL.equals(path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain) throws IOException, ServletException {
+        long retryAfter = loginThrottle.acquireForAddress(req.getRemoteAddr());
+        if(retryAfter > 0) {
+            res.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            res.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter));
+            return;
+        }
+        chain.doFilter(req, res);
+    }
+}
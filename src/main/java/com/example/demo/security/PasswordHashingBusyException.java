@@ -0,0 +1,15 @@
+package com.example.demo.security;
+
+/**
+ * Thrown when a password could not be hashed or checked because the
+ * password hashing pool is saturated. Callers answer 503 so clients retry
+ * later.
+ */
+public class PasswordHashingBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.demo.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BCrypt encoder that hashes and checks passwords on its own small thread
+ * pool instead of the calling request thread, so a burst of logins or
+ * sign-ups cannot take every servlet thread and CPU away from other
+ * traffic.
+ * <p>
+ * The pool has a fixed number of threads and a bounded queue. Work that
+ * does not fit in the queue, or that waits longer than the configured
+ * limit for its result, fails fast with a
+ * {@link PasswordHashingBusyException}. Once bound to a meter registry the
+ * encoder records how long work waited in the queue, how long the hashing
+ * took and how much work was rejected.
+ */
+public class PooledBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledBCryptPasswordEncoder.class);
+
+    private final ThreadPoolExecutor executor;
+
+    private final long maxWaitMillis;
+
+    private volatile Timer queueWait;
+
+    private volatile Timer encodeTime;
+
+    private volatile Timer matchTime;
+
+    private volatile Counter rejected;
+
+    /**
+     * @param threads hashing threads, 0 for half the available processors
+     * @param queueCapacity hashes that may wait for a thread
+     * @param maxWaitMillis longest a caller waits for its result
+     */
+    public PooledBCryptPasswordEncoder(int strength, int threads, int queueCapacity, long maxWaitMillis) {
+        super(strength);
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        queueWait = Timer.builder("security.password.queue")
+                .description("Time password work waited for a hashing thread")
+                .register(registry);
+        encodeTime = Timer.builder("security.password.hash").tag("operation", "encode")
+                .description("Time spent hashing passwords")
+                .register(registry);
+        matchTime = Timer.builder("security.password.hash").tag("operation", "matches")
+                .description("Time spent hashing passwords")
+                .register(registry);
+        rejected = Counter.builder("security.password.rejected")
+                .description("Password work turned away because the pool was saturated")
+                .register(registry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> super.encode(rawPassword), encodeTime);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> super.matches(rawPassword, encodedPassword), matchTime);
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T run(Callable<T> work, Timer hashTime) {
+        long queuedAt = System.nanoTime();
+        Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                record(queueWait, startedAt - queuedAt);
+                try {
+                    return work.call();
+                } finally {
+                    record(hashTime, System.nanoTime() - startedAt);
+                }
+            });
+        } catch(RejectedExecutionException ex) {
+            return busy("Password hashing queue is full");
+        }
+        try {
+            return result.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException ex) {
+            result.cancel(true);
+            return busy("Password hashing took longer than " + maxWaitMillis + " ms");
+        } catch(InterruptedException ex) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return busy("Interrupted while waiting for password hashing");
+        } catch(ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private <T> T busy(String message) {
+        if(rejected != null) {
+            rejected.increment();
+        }
+        log.warn(message);
+        throw new PasswordHashingBusyException(message);
+    }
+
+    private static void record(Timer timer, long nanos) {
+        if(timer != null) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
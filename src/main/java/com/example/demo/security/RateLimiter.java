@@ -0,0 +1,159 @@
+package com.example.demo.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket per key, kept as the time at which the key's bucket will be
+ * full again (the generic cell rate algorithm). Each bucket is one
+ * {@link AtomicLong} updated by compare-and-set, and buckets live in a
+ * {@link ConcurrentHashMap}, so callers never take a lock.
+ * <p>
+ * A bucket that has refilled carries no state a fresh one would not, so it
+ * is dropped by {@link #evictIdle()}. When the map reaches its key limit,
+ * idle buckets are swept inline; keys that still do not fit are hashed onto
+ * a fixed set of overflow buckets. This keeps memory bounded under address
+ * or username spraying without letting the new keys through unthrottled,
+ * and a new key only shares its permits with the overflow keys of its own
+ * stripe, so a spray cannot drain every newcomer's bucket at once. Keys
+ * already tracked are never charged for overflow traffic.
+ */
+public class RateLimiter {
+
+    private final String name;
+
+    private final long intervalNanos;
+
+    private final long toleranceNanos;
+
+    private final int maxKeys;
+
+    private final LongSupplier ticker;
+
+    private static final int OVERFLOW_STRIPES = 64;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong[] overflow = new AtomicLong[OVERFLOW_STRIPES];
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param permitsPerMinute sustained rate allowed per key
+     * @param burst permits a key may use at once after being idle
+     * @param maxKeys keys tracked before new ones share the overflow buckets
+     */
+    public RateLimiter(String name, int permitsPerMinute, int burst, int maxKeys) {
+        this(name, permitsPerMinute, burst, maxKeys, System::nanoTime);
+    }
+
+    RateLimiter(String name, int permitsPerMinute, int burst, int maxKeys, LongSupplier ticker) {
+        if(permitsPerMinute < 1 || burst < 1 || maxKeys < 1) {
+            throw new IllegalArgumentException("Rate limiter " + name + " needs a positive rate, burst and key limit");
+        }
+        this.name = name;
+        this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / permitsPerMinute;
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.maxKeys = maxKeys;
+        this.ticker = ticker;
+        for(int i = 0; i < OVERFLOW_STRIPES; i++) {
+            overflow[i] = new AtomicLong(ticker.getAsLong());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Takes a permit for the key. Returns 0 if one was available, otherwise
+     * the nanoseconds until the next one is.
+     */
+    public long tryAcquire(String key) {
+        long now = ticker.getAsLong();
+        AtomicLong bucket = bucket(key, now);
+        while(true) {
+            long fullAt = bucket.get();
+            long start = fullAt - now > 0 ? fullAt : now;
+            long waitNanos = start - toleranceNanos - now;
+            if(waitNanos > 0) {
+                rejected.incrementAndGet();
+                return waitNanos;
+            }
+            if(bucket.compareAndSet(fullAt, start + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drops the buckets that have refilled. A permit taken from a bucket in
+     * the moment it is dropped is forgotten, which only ever errs towards
+     * letting a request through.
+     */
+    public void evictIdle() {
+        long now = ticker.getAsLong();
+        Iterator<Map.Entry<String, AtomicLong>> it = buckets.entrySet().iterator();
+        while(it.hasNext()) {
+            if(it.next().getValue().get() - now <= 0) {
+                it.remove();
+            }
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("security.rate_limit.keys", buckets, Map::size)
+                .tag("limiter", name)
+                .description("Keys with a partly used bucket")
+                .register(registry);
+        FunctionCounter.builder("security.rate_limit.rejected", rejected, AtomicLong::get)
+                .tag("limiter", name)
+                .description("Requests turned away by the rate limiter")
+                .register(registry);
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if(bucket != null) {
+            return bucket;
+        }
+        if(buckets.size() >= maxKeys) {
+            if(sweeping.compareAndSet(false, true)) {
+                try {
+                    evictIdle();
+                } finally {
+                    sweeping.set(false);
+                }
+            }
+            if(buckets.size() >= maxKeys) {
+                return overflow[stripe(key)];
+            }
+        }
+        // a new bucket starts full
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (OVERFLOW_STRIPES - 1);
+    }
+}
@@ -6,4 +6,6 @@ public class SecurityConstants {
     public static final String HEADER_STRING = "Authorization";
     public static final String TOKEN_PREFIX = "Bearer ";
     public static final String SIGN_UP_URL = "/api/user/create";
+    public static final String ADMIN_ROLE = "ADMIN";
+    public static final String FINANCE_ROLE = "FINANCE";
 }
@@ -0,0 +1,86 @@
+package com.example.demo.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.demo.cache.BoundedCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies bearer tokens with one shared HMAC512 verifier and remembers the
+ * tokens it has verified, keyed by their SHA-256 digest, until they expire.
+ * A client that sends the same token again skips parsing and the HMAC
+ * check. Only tokens that passed verification are cached; the raw token is
+ * never kept.
+ */
+@Component
+public class TokenVerifier {
+
+    static final Algorithm ALGORITHM = Algorithm.HMAC512(SecurityConstants.SECRET.getBytes());
+
+    private static final JWTVerifier VERIFIER = JWT.require(ALGORITHM).build();
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final BoundedCache<String, DecodedJWT> verified;
+
+    public TokenVerifier(@Value("${security.token-cache.max-tokens:10000}") int maxTokens,
+                         @Value("${security.token-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.verified = new BoundedCache<>("security.tokens", maxTokens, ttlMinutes, TimeUnit.MINUTES);
+    }
+
+    @PostConstruct
+    public void bindMetrics() {
+        if(meterRegistry != null) {
+            verified.bindTo(meterRegistry);
+        }
+    }
+
+    /**
+     * Returns the decoded token, or throws {@link JWTVerificationException} if
+     * its signature or expiry does not check out.
+     */
+    public DecodedJWT verify(String token) {
+        String digest = digest(token);
+        DecodedJWT jwt = verified.getIfPresent(digest);
+        if(jwt != null) {
+            return jwt;
+        }
+        jwt = VERIFIER.verify(token);
+        Date expiresAt = jwt.getExpiresAt();
+        if(expiresAt == null) {
+            verified.put(digest, jwt);
+        } else {
+            long remainingMillis = expiresAt.getTime() - System.currentTimeMillis();
+            verified.putUntil(digest, jwt, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(remainingMillis));
+        }
+        return jwt;
+    }
+
+    public BoundedCache<String, DecodedJWT> getCache() {
+        return verified;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch(NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.demo.security;
+
+/**
+ * Published after a user row is inserted, updated or deleted through JPA.
+ */
+public class UserChangedEvent {
+
+    private final String username;
+
+    private final boolean created;
+
+    public UserChangedEvent(String username, boolean created) {
+        this.username = username;
+        this.created = created;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * True for a new user, whose row cannot have been read under another
+     * username before.
+     */
+    public boolean isCreated() {
+        return created;
+    }
+}
@@ -1,26 +1,116 @@
 package com.example.demo.security;
 
+import com.example.demo.cache.BoundedCache;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
-import java.util.Collections;
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Loads login details by username through a short-lived cache, so repeated
+ * logins by the same account skip the user query. The cache holds
+ * immutable snapshots and every call gets its own {@link AccountDetails},
+ * because Spring erases the password from the details it authenticated.
+ * Unknown usernames are not cached.
+ * <p>
+ * Users listed in {@code security.admin-users} or
+ * {@code security.finance-users} are granted the matching role.
+ */
 @Service
 public class UserDetailsServiceImpl implements UserDetailsService {
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${security.admin-users:}")
+    private String[] adminUsers = new String[0];
+
+    @Value("${security.finance-users:}")
+    private String[] financeUsers = new String[0];
+
+    private final BoundedCache<String, Account> accounts;
+
+    private static final class Account {
+        private final String username;
+        private final String password;
+        private final long userId;
+        private final Long cartId;
+
+        private Account(User user) {
+            this.username = user.getUsername();
+            this.password = user.getPassword();
+            this.userId = user.getId();
+            this.cartId = user.getCart() == null ? null : user.getCart().getId();
+        }
+    }
+
+    public UserDetailsServiceImpl(@Value("${security.user-cache.max-users:10000}") int maxUsers,
+                                  @Value("${security.user-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.accounts = new BoundedCache<>("security.users", maxUsers, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    @PostConstruct
+    public void bindMetrics() {
+        if(meterRegistry != null) {
+            accounts.bindTo(meterRegistry);
+        }
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username);
-        if(user == null) {
+        if(username == null) {
+            throw new UsernameNotFoundException("No username given");
+        }
+        Account account = accounts.get(username, key -> {
+            User user = userRepository.findByUsername(key);
+            return user == null ? null : new Account(user);
+        });
+        if(account == null) {
             throw new UsernameNotFoundException(username);
         }
-        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), Collections.emptyList());
+        return new AccountDetails(account.username, account.password, account.userId, account.cartId,
+                authoritiesOf(account.username));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if(event.isCreated()) {
+            accounts.invalidate(event.getUsername());
+        } else {
+            // a rename leaves the old username cached and only the new one is known here
+            accounts.invalidateAll();
+        }
+    }
+
+    BoundedCache<String, ?> getCache() {
+        return accounts;
+    }
+
+    private List<GrantedAuthority> authoritiesOf(String username) {
+        List<GrantedAuthority> authorities = new ArrayList<>(2);
+        if(Arrays.asList(adminUsers).contains(username)) {
+            authorities.add(new SimpleGrantedAuthority("ROLE_" + SecurityConstants.ADMIN_ROLE));
+        }
+        if(Arrays.asList(financeUsers).contains(username)) {
+            authorities.add(new SimpleGrantedAuthority("ROLE_" + SecurityConstants.FINANCE_ROLE));
+        }
+        return authorities;
     }
 }
@@ -0,0 +1,37 @@
+package com.example.demo.security;
+
+import com.example.demo.model.persistence.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA callbacks for {@link User} that turn row changes into
+ * {@link UserChangedEvent}s for the cached login details. Hibernate creates
+ * this listener through Spring, which injects the publisher.
+ */
+public class UserEntityListener {
+
+    @Autowired
+    private ApplicationEventPublisher publisher;
+
+    @PostPersist
+    public void userCreated(User user) {
+        publish(user, true);
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void userChanged(User user) {
+        publish(user, false);
+    }
+
+    private void publish(User user, boolean created) {
+        if(publisher != null) {
+            publisher.publishEvent(new UserChangedEvent(user.getUsername(), created));
+        }
+    }
+}
@@ -1,2 +1,3 @@
-insert into item (name, price, description) values ('Round Widget', 2.99, 'A widget that is round');
-insert into item (name, price, description) values ('Square Widget', 1.99, 'A widget that is square');
\ No newline at end of file
+insert into item (id, name, price_cents, description, version) values (1, 'Round Widget', 299, 'A widget that is round', 0);
+insert into item (id, name, price_cents, description, version) values (2, 'Square Widget', 199, 'A widget that is square', 0);
+insert into catalog_revision (id, revision) values (1, 0);
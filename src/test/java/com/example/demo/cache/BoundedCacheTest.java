@@ -0,0 +1,133 @@
+package com.example.demo.cache;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class BoundedCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final BoundedCache<Long, String> cache =
+            new BoundedCache<>("test", 2, 10, TimeUnit.SECONDS, now::get);
+
+    @Test
+    public void get_loads_once_and_counts_hits() {
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("1", cache.get(1L, id -> { loads.incrementAndGet(); return "1"; }));
+        assertEquals("1", cache.get(1L, id -> { loads.incrementAndGet(); return "1"; }));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void null_values_are_not_cached() {
+        assertNull(cache.get(1L, id -> null));
+        assertNull(cache.getIfPresent(1L));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void least_recently_used_entry_is_evicted() {
+        cache.put(1L, "1");
+        cache.put(2L, "2");
+        cache.getIfPresent(1L);
+        cache.put(3L, "3");
+
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.getIfPresent(1L));
+        assertNull(cache.getIfPresent(2L));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void entries_expire_after_ttl() {
+        cache.put(1L, "1");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertEquals("1", cache.getIfPresent(1L));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertNull(cache.getIfPresent(1L));
+    }
+
+    @Test
+    public void put_until_keeps_earlier_deadline() {
+        cache.putUntil(1L, "1", now.get() + TimeUnit.SECONDS.toNanos(1));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        assertNull(cache.getIfPresent(1L));
+    }
+
+    @Test
+    public void invalidate_during_load_drops_loaded_value() {
+        String value = cache.get(1L, id -> {
+            cache.invalidate(id);
+            return "stale";
+        });
+
+        assertEquals("stale", value);
+        assertNull(cache.getIfPresent(1L));
+    }
+
+    @Test
+    public void concurrent_misses_share_one_load() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> cache.get(1L, id -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "1";
+            }));
+            loading.await(5, TimeUnit.SECONDS);
+            Future<String> second = executor.submit(() -> cache.get(1L, id -> {
+                loads.incrementAndGet();
+                return "other";
+            }));
+            // give the second reader time to find the running load
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals("1", first.get(5, TimeUnit.SECONDS));
+            assertEquals("1", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failed_load_is_not_cached() {
+        try {
+            cache.get(1L, id -> { throw new IllegalStateException("down"); });
+            fail();
+        } catch(IllegalStateException expected) {
+        }
+
+        assertEquals("1", cache.get(1L, id -> "1"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
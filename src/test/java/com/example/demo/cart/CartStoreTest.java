@@ -0,0 +1,136 @@
+package com.example.demo.cart;
+
+import com.example.demo.TestUtils;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CartStoreTest {
+
+    private CartStore cartStore;
+
+    private final CartRepository cartRepository = mock(CartRepository.class);
+
+    @Before
+    public void init() {
+        cartStore = new CartStore();
+        TestUtils.injectObjects(cartStore, "cartRepository", cartRepository);
+        TestUtils.injectObjects(cartStore, "cartLocks", new CartLocks(16));
+        TestUtils.injectObjects(cartStore, "entityManager", mock(EntityManager.class));
+        TestUtils.injectObjects(cartStore, "writeBehind", true);
+        TestUtils.injectObjects(cartStore, "maxCarts", 1);
+        TestUtils.injectObjects(cartStore, "flushBatchSize", 10);
+
+        when(cartRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    public void save_is_deferred_until_flush() {
+        Cart cart = cartStore.checkout(getTestCart(1L));
+        cart.addItem(getTestItem(), 3);
+        cartStore.save(cart);
+
+        verify(cartRepository, never()).save(any(Cart.class));
+        verify(cartRepository, never()).saveAll(anyList());
+
+        cartStore.flushDirty();
+
+        verify(cartRepository, times(1)).saveAll(Collections.singletonList(cart));
+
+        // nothing left to write
+        cartStore.flushDirty();
+        verify(cartRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    public void checkout_returns_live_copy_instead_of_loaded_row() {
+        Cart live = cartStore.checkout(getTestCart(1L));
+        live.addItem(getTestItem(), 2);
+        cartStore.save(live);
+
+        Cart reloaded = cartStore.checkout(getTestCart(1L));
+
+        assertSame(live, reloaded);
+        assertEquals(2, reloaded.getQuantity(1L));
+    }
+
+    @Test
+    public void evicted_dirty_cart_is_written() {
+        Cart first = cartStore.checkout(getTestCart(1L));
+        first.addItem(getTestItem(), 1);
+        cartStore.save(first);
+
+        cartStore.checkout(getTestCart(2L));
+
+        assertEquals(1, cartStore.size());
+        verify(cartRepository, times(1)).saveAll(Collections.singletonList(first));
+    }
+
+    @Test
+    public void flush_writes_pending_changes_before_order() {
+        Cart loaded = getTestCart(1L);
+        Cart live = cartStore.checkout(loaded);
+        live.addItem(getTestItem(), 4);
+        cartStore.save(live);
+
+        Cart flushed = cartStore.flush(getTestCart(1L));
+
+        assertEquals(4, flushed.getQuantity(1L));
+        verify(cartRepository, times(1)).saveAll(Collections.singletonList(live));
+
+        cartStore.flushDirty();
+        verify(cartRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    public void flush_inside_open_entity_manager_shares_a_detached_cart() {
+        EntityManager entityManager = mock(EntityManager.class);
+        TestUtils.injectObjects(cartStore, "entityManager", entityManager);
+        TestUtils.injectObjects(cartStore, "transactionManager", mock(PlatformTransactionManager.class));
+        // merging into the request's entity manager returns a new managed instance
+        Cart merged = getTestCart(1L);
+        merged.addItem(getTestItem(), 4);
+        when(cartRepository.saveAll(anyList())).thenReturn(Collections.singletonList(merged));
+        Cart live = cartStore.checkout(getTestCart(1L));
+        live.addItem(getTestItem(), 4);
+        cartStore.save(live);
+
+        Cart flushed = cartStore.flush(getTestCart(1L));
+
+        assertSame(merged, flushed);
+        verify(entityManager).detach(merged);
+        assertSame(merged, cartStore.checkout(getTestCart(1L)));
+    }
+
+    private Cart getTestCart(long id) {
+        Cart cart = new Cart();
+        cart.setId(id);
+        return cart;
+    }
+
+    private Item getTestItem() {
+        Item item = new Item();
+        item.setId(1L);
+        item.setName("Round Widget");
+        item.setPriceCents(299);
+        item.setDescription("A widget that is round");
+
+        return item;
+    }
+}
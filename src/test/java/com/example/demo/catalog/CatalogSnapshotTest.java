@@ -0,0 +1,154 @@
+package com.example.demo.catalog;
+
+import com.example.demo.TestUtils;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CatalogSnapshotTest {
+
+    private CatalogSnapshot catalogSnapshot;
+
+    private ItemCache itemCache;
+
+    private final ItemRepository itemRepository = mock(ItemRepository.class);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    private Path dir;
+
+    private Path file;
+
+    @Before
+    public void init() throws IOException {
+        dir = Files.createTempDirectory("catalog-snapshot-test");
+        file = dir.resolve("items.snapshot");
+
+        itemCache = new ItemCache(100, 100, 60);
+        TestUtils.injectObjects(itemCache, "itemRepository", itemRepository);
+
+        catalogSnapshot = new CatalogSnapshot();
+        TestUtils.injectObjects(catalogSnapshot, "itemCache", itemCache);
+        TestUtils.injectObjects(catalogSnapshot, "itemRepository", itemRepository);
+        TestUtils.injectObjects(catalogSnapshot, "jdbcTemplate", jdbcTemplate);
+        TestUtils.injectObjects(catalogSnapshot, "transactionManager", mock(PlatformTransactionManager.class));
+        TestUtils.injectObjects(catalogSnapshot, "entityManager", mock(EntityManager.class));
+        TestUtils.injectObjects(catalogSnapshot, "enabled", true);
+        TestUtils.injectObjects(catalogSnapshot, "path", file.toString());
+
+        when(itemRepository.streamAllOrderById()).thenReturn(Stream.of(
+                getTestItem(1L, "Round Widget", 299, 0L),
+                getTestItem(2L, "Squ\u00e4re Widget", 199, 3L)));
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void snapshot_round_trips_items_and_fingerprint() throws IOException {
+        catalogSnapshot.write(file);
+
+        List<Item> items = new ArrayList<>();
+        CatalogSnapshot.Fingerprint fingerprint = CatalogSnapshot.read(file, Integer.MAX_VALUE, items::add);
+
+        assertEquals(new CatalogSnapshot.Fingerprint(2, 2, 3), fingerprint);
+        assertEquals(2, items.size());
+        assertEquals("Squ\u00e4re Widget", items.get(1).getName());
+        assertEquals(199, items.get(1).getPriceCents());
+        assertEquals(Long.valueOf(3), items.get(1).getVersion());
+        assertEquals("A widget", items.get(1).getDescription());
+    }
+
+    @Test(expected = IOException.class)
+    public void corrupted_snapshot_is_rejected() throws IOException {
+        catalogSnapshot.write(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[20] ^= 1;
+        Files.write(file, bytes);
+
+        CatalogSnapshot.read(file, Integer.MAX_VALUE, item -> { });
+    }
+
+    @Test
+    public void read_decodes_only_up_to_the_limit() throws IOException {
+        catalogSnapshot.write(file);
+
+        List<Item> items = new ArrayList<>();
+        CatalogSnapshot.Fingerprint fingerprint = CatalogSnapshot.read(file, 1, items::add);
+
+        assertEquals(new CatalogSnapshot.Fingerprint(2, 2, 3), fingerprint);
+        assertEquals(1, items.size());
+        assertEquals(Long.valueOf(1), items.get(0).getId());
+    }
+
+    @Test
+    public void warm_start_fills_the_cache_only_to_its_capacity() throws IOException {
+        catalogSnapshot.write(file);
+        ItemCache small = new ItemCache(1, 1, 60);
+        TestUtils.injectObjects(catalogSnapshot, "itemCache", small);
+
+        catalogSnapshot.warm();
+
+        assertEquals(1, small.getByIdCache().size());
+        assertEquals("Round Widget", small.getByIdCache().getIfPresent(1L).getName());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void warm_start_serves_items_until_fingerprint_differs() throws IOException {
+        catalogSnapshot.write(file);
+
+        catalogSnapshot.warm();
+        assertEquals("Round Widget", itemCache.findById(1L).get().getName());
+        verify(itemRepository, never()).findById(1L);
+
+        when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class)))
+                .thenReturn(new CatalogSnapshot.Fingerprint(3, 5, 3));
+        catalogSnapshot.verify();
+        assertNull(itemCache.getByIdCache().getIfPresent(1L));
+    }
+
+    @Test
+    public void missing_snapshot_is_ignored() {
+        catalogSnapshot.warm();
+
+        assertTrue(itemCache.getByIdCache().size() == 0);
+    }
+
+    private Item getTestItem(Long id, String name, long priceCents, Long version) {
+        Item item = new Item();
+        item.setId(id);
+        item.setName(name);
+        item.setPriceCents(priceCents);
+        item.setDescription("A widget");
+        item.setVersion(version);
+
+        return item;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.demo.catalog;
+
+import com.example.demo.eCommerceApplication;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// same context as eCommerceApplicationTests, so both share one in-memory database
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = eCommerceApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CatalogVersionTest {
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void jpa_item_writes_bump_the_catalog_revision() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+
+        long before = catalogVersion.current();
+        Item item = tx.execute(status -> {
+            Item created = new Item();
+            created.setName("Triangle Widget");
+            created.setPriceCents(399);
+            created.setDescription("A widget that is triangular");
+            return itemRepository.save(created);
+        });
+        long afterInsert = catalogVersion.current();
+        assertTrue(afterInsert > before);
+
+        tx.execute(status -> {
+            Item loaded = itemRepository.findById(item.getId()).get();
+            loaded.setPriceCents(499);
+            return null;
+        });
+        long afterUpdate = catalogVersion.current();
+        assertTrue(afterUpdate > afterInsert);
+
+        tx.execute(status -> {
+            itemRepository.deleteById(item.getId());
+            return null;
+        });
+        assertTrue(catalogVersion.current() > afterUpdate);
+    }
+
+    @Test
+    public void rolled_back_item_write_keeps_the_catalog_revision() {
+        long before = catalogVersion.current();
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            Item created = new Item();
+            created.setName("Oval Widget");
+            created.setPriceCents(299);
+            created.setDescription("A widget that is oval");
+            itemRepository.save(created);
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertEquals(before, catalogVersion.current());
+    }
+}
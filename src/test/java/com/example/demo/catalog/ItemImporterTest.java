@@ -0,0 +1,160 @@
+package com.example.demo.catalog;
+
+import com.example.demo.TestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ItemImporterTest {
+
+    private ItemImporter itemImporter;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    private final ApplicationEventPublisher publisher = mock(ApplicationEventPublisher.class);
+
+    private final CatalogVersion catalogVersion = mock(CatalogVersion.class);
+
+    @Before
+    public void init() {
+        itemImporter = new ItemImporter();
+        TestUtils.injectObjects(itemImporter, "jdbcTemplate", jdbcTemplate);
+        TestUtils.injectObjects(itemImporter, "transactionManager", mock(PlatformTransactionManager.class));
+        TestUtils.injectObjects(itemImporter, "objectMapper", new ObjectMapper());
+        TestUtils.injectObjects(itemImporter, "publisher", publisher);
+        TestUtils.injectObjects(itemImporter, "catalogVersion", catalogVersion);
+        TestUtils.injectObjects(itemImporter, "batchSize", 2);
+
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1000L, 1050L);
+    }
+
+    @Test
+    public void csv_import_inserts_in_batches_and_skips_bad_rows() throws Exception {
+        ItemImportJob job = run(ItemImporter.Format.CSV,
+                "description,name,price\n"
+                        + "\"A widget, but round\",Round Widget,2.99\n"
+                        + "A widget that is square,Square Widget,not-a-price\n"
+                        + "A widget that is oval,Oval Widget,1\n"
+                        + "A gadget,Gadget,0.5\n");
+
+        assertEquals(ItemImportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(3, job.getImported());
+        assertEquals(1, job.getRejected());
+        assertFalse(job.getErrors().isEmpty());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rows.capture());
+        assertArrayEquals(new Object[] { 1000L, "Round Widget", 299L, "A widget, but round" },
+                rows.getAllValues().get(0).get(0));
+        assertArrayEquals(new Object[] { 1001L, "Oval Widget", 100L, "A widget that is oval" },
+                rows.getAllValues().get(0).get(1));
+        assertArrayEquals(new Object[] { 1002L, "Gadget", 50L, "A gadget" },
+                rows.getAllValues().get(1).get(0));
+        verify(publisher).publishEvent(any(CatalogReloadedEvent.class));
+        verify(catalogVersion, times(2)).bump();
+    }
+
+    @Test
+    public void ndjson_import_reads_item_json() throws Exception {
+        ItemImportJob job = run(ItemImporter.Format.NDJSON,
+                "{\"id\":7,\"name\":\"Round Widget\",\"price\":2.99,\"description\":\"A widget that is round\"}\n"
+                        + "{\"name\":\"Nameless\"}\n");
+
+        assertEquals(1, job.getImported());
+        assertEquals(1, job.getRejected());
+    }
+
+    @Test
+    public void csv_without_required_columns_fails_job() throws Exception {
+        ItemImportJob job = run(ItemImporter.Format.CSV, "name,cost\nRound Widget,2.99\n");
+
+        assertEquals(ItemImportJob.Status.FAILED, job.getStatus());
+        assertEquals(0, job.getImported());
+        verify(jdbcTemplate, times(0)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    public void upload_over_the_limit_is_refused() throws Exception {
+        TestUtils.injectObjects(itemImporter, "maxBytes", 10L);
+
+        try {
+            itemImporter.submit(new ByteArrayInputStream("name,price,description\n".getBytes(StandardCharsets.UTF_8)),
+                    ItemImporter.Format.CSV);
+            fail();
+        } catch(UploadTooLargeException expected) {
+        }
+    }
+
+    @Test
+    public void running_job_is_kept_while_finished_jobs_are_evicted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch inserting = new CountDownLatch(1);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            inserting.countDown();
+            release.await();
+            return new int[0];
+        });
+        try {
+            ItemImportJob running = itemImporter.submit(new ByteArrayInputStream(
+                    "name,price,description\nRound Widget,2.99,A widget\n".getBytes(StandardCharsets.UTF_8)),
+                    ItemImporter.Format.CSV);
+            assertTrue(inserting.await(5, TimeUnit.SECONDS));
+
+            ItemImportJob first = run(ItemImporter.Format.CSV, "name,price,description\n");
+            for(int i = 0; i < 1000; i++) {
+                run(ItemImporter.Format.CSV, "name,price,description\n");
+            }
+
+            assertNull(itemImporter.getJob(first.getId()));
+            assertSame(running, itemImporter.getJob(running.getId()));
+            assertEquals(ItemImportJob.Status.RUNNING, running.getStatus());
+        } finally {
+            release.countDown();
+            itemImporter.shutdown();
+        }
+    }
+
+    @Test
+    public void parse_csv_line_handles_quotes() {
+        assertEquals(Arrays.asList("a", "b, \"c\"", ""), ItemImporter.parseCsvLine("a,\"b, \"\"c\"\"\","));
+    }
+
+    private ItemImportJob run(ItemImporter.Format format, String content) throws Exception {
+        Path file = Files.createTempFile("item-import-test", ".tmp");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        ItemImportJob job = new ItemImportJob(UUID.randomUUID().toString());
+        itemImporter.run(job, file, format);
+        return job;
+    }
+}
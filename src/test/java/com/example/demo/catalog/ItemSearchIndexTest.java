@@ -0,0 +1,102 @@
+package com.example.demo.catalog;
+
+import com.example.demo.model.persistence.Item;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ItemSearchIndexTest {
+
+    private ItemSearchIndex index;
+
+    @Before
+    public void init() {
+        index = new ItemSearchIndex();
+        index.index(getTestItem(1L, "Round Widget", "A widget that is round"));
+        index.index(getTestItem(2L, "Square Widget", "A widget that is square"));
+        index.index(getTestItem(3L, "Round Gadget", "Goes well with a square widget"));
+    }
+
+    @Test
+    public void search_ranks_name_matches_first() {
+        List<Item> items = index.search("square widget", 10);
+
+        assertEquals(2, items.size());
+        assertEquals(Long.valueOf(2), items.get(0).getId());
+        assertEquals(Long.valueOf(3), items.get(1).getId());
+    }
+
+    @Test
+    public void search_matches_last_word_by_prefix() {
+        List<Item> items = index.search("round wid", 10);
+
+        assertEquals(2, items.size());
+        assertEquals(Long.valueOf(1), items.get(0).getId());
+        assertEquals(Long.valueOf(3), items.get(1).getId());
+    }
+
+    @Test
+    public void suggest_returns_names_by_word_prefix() {
+        assertEquals(Arrays.asList("Round Gadget", "Round Widget"), index.suggest("ro", 10));
+        assertEquals(Arrays.asList("Round Widget", "Square Widget"), index.suggest("WID", 10));
+        assertEquals(Collections.singletonList("Round Gadget"), index.suggest("round", 1));
+    }
+
+    @Test
+    public void suggest_normalizes_mixed_case_and_multi_word_prefixes() {
+        assertEquals(Collections.singletonList("Round Widget"), index.suggest("ROUND wi", 10));
+        assertEquals(Collections.singletonList("Round Widget"), index.suggest("  Round,   Wid", 10));
+        // words after the first may appear anywhere in the name
+        assertEquals(Collections.singletonList("Round Widget"), index.suggest("widget Rou", 10));
+        assertEquals(Collections.emptyList(), index.suggest("Square Gad", 10));
+        assertEquals(Collections.emptyList(), index.suggest(" , ", 10));
+    }
+
+    @Test
+    public void limit_keeps_the_best_matches_of_a_wide_prefix() {
+        // Widget z10, Widget y11, ... Widget a35, Widget z36, ... Widget c59
+        for(long id = 10; id < 60; id++) {
+            index.index(getTestItem(id, "Widget " + (char) ('z' - (id - 10) % 26) + id, "Another widget"));
+        }
+        index.index(getTestItem(4L, "Widget", "Just a widget"));
+        index.index(getTestItem(5L, "Another Widget", "Plain"));
+
+        assertEquals(Arrays.asList("Widget", "Widget a35", "Widget b34"), index.suggest("wi", 3));
+        assertEquals("Another Widget", index.suggest("wid", 100).get(51));
+
+        List<Item> items = index.search("widg", 3);
+        assertEquals(3, items.size());
+        assertEquals(Long.valueOf(1), items.get(0).getId());
+        assertEquals(Long.valueOf(2), items.get(1).getId());
+        assertEquals(Long.valueOf(4), items.get(2).getId());
+    }
+
+    @Test
+    public void reindexing_and_removal_update_results() {
+        index.index(getTestItem(1L, "Oval Widget", "A widget that is oval"));
+        index.remove(2L);
+
+        List<Item> round = index.search("round widget", 10);
+        assertEquals(1, round.size());
+        assertEquals(Long.valueOf(3), round.get(0).getId());
+        assertEquals(1, index.search("oval", 10).size());
+        assertTrue(index.search("square", 10).stream().noneMatch(item -> item.getId() == 2L));
+        assertEquals(2, index.size());
+    }
+
+    private Item getTestItem(Long id, String name, String description) {
+        Item item = new Item();
+        item.setId(id);
+        item.setName(name);
+        item.setPriceCents(299);
+        item.setDescription(description);
+
+        return item;
+    }
+}
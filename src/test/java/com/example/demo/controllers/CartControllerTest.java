@@ -1,22 +1,45 @@
 package com.example.demo.controllers;
 
 import com.example.demo.TestUtils;
+import com.example.demo.catalog.ItemCache;
+import com.example.demo.cart.CartLocks;
+import com.example.demo.cart.CartStore;
 import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartLine;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartBatchRequest;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartDelta;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
-import java.math.BigDecimal;
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CartControllerTest {
@@ -29,18 +52,39 @@ public class CartControllerTest {
 
     private final ItemRepository itemRepository = mock(ItemRepository.class);
 
+    private final CartLocks cartLocks = new CartLocks(16);
+
     @Before
     public void init() {
         cartController = new CartController();
-        TestUtils.injectObjects(cartController, "userRepository", userRepository);
-        TestUtils.injectObjects(cartController, "cartRepository", cartRepository);
-        TestUtils.injectObjects(cartController, "itemRepository", itemRepository);
-
-        when(userRepository.findByUsername("test")).thenReturn(getTestUser());
-        when(userRepository.findByUsername("test2")).thenReturn(getTestUserWithCartItems());
-        when(userRepository.findByUsername("testUserNotFound")).thenReturn(null);
+        UserLookup userLookup = new UserLookup();
+        TestUtils.injectObjects(userLookup, "userRepository", userRepository);
+        TestUtils.injectObjects(userLookup, "cartRepository", cartRepository);
+        TestUtils.injectObjects(cartController, "userLookup", userLookup);
+        CartStore cartStore = new CartStore();
+        TestUtils.injectObjects(cartStore, "cartRepository", cartRepository);
+        TestUtils.injectObjects(cartStore, "cartLocks", cartLocks);
+        ItemCache itemCache = new ItemCache(100, 100, 60);
+        TestUtils.injectObjects(itemCache, "itemRepository", itemRepository);
+        TestUtils.injectObjects(cartController, "itemCache", itemCache);
+        TestUtils.injectObjects(cartController, "cartLocks", cartLocks);
+        TestUtils.injectObjects(cartController, "cartStore", cartStore);
+
+        when(userRepository.findCartIdByUsername("test")).thenReturn(1L);
+        when(userRepository.findCartIdByUsername("test2")).thenReturn(2L);
+        when(userRepository.findCartIdByUsername("testUserNotFound")).thenReturn(null);
+        when(userRepository.findCartIdByUsername("testConflict")).thenReturn(3L);
+        when(cartRepository.findById(1L)).thenAnswer(invocation -> Optional.of(getTestUser().getCart()));
+        when(cartRepository.findById(2L)).thenAnswer(invocation -> Optional.of(getTestUserWithCartItems().getCart()));
+        when(cartRepository.findById(3L)).thenAnswer(invocation -> {
+            Cart cart = getTestUserWithCartItems().getCart();
+            cart.setId(3L);
+            return Optional.of(cart);
+        });
         when(itemRepository.findById(1L)).thenReturn(Optional.of(getTestItem()));
         when(itemRepository.findById(2L)).thenReturn(Optional.empty());
+        when(itemRepository.findAllById(Collections.singleton(1L))).thenReturn(Collections.singletonList(getTestItem()));
+        when(itemRepository.findAllById(new HashSet<>(Arrays.asList(1L, 2L)))).thenReturn(Collections.singletonList(getTestItem()));
     }
 
     @Test
@@ -59,14 +103,55 @@ public class CartControllerTest {
         assertEquals(200, responseEntity.getStatusCodeValue());
 
         Cart responseBody = responseEntity.getBody();
-        assertEquals(item.getId(), responseBody.getItems().get(0).getId());
-        assertEquals(item.getName(), responseBody.getItems().get(0).getName());
-        assertEquals(item.getDescription(), responseBody.getItems().get(0).getDescription());
-        assertEquals(item.getId(), responseBody.getItems().get(1).getId());
-        assertEquals(item.getName(), responseBody.getItems().get(1).getName());
-        assertEquals(item.getDescription(), responseBody.getItems().get(1).getDescription());
-        assertEquals(item.getPrice().multiply(BigDecimal.valueOf(2)), responseBody.getTotal());
-        assertEquals(cartRequest.getQuantity(), responseBody.getItems().size());
+        assertEquals(1, responseBody.getLines().size());
+        CartLine line = responseBody.getLine(item.getId());
+        assertEquals(item.getId(), line.getItem().getId());
+        assertEquals(item.getName(), line.getItem().getName());
+        assertEquals(item.getDescription(), line.getItem().getDescription());
+        assertEquals(cartRequest.getQuantity(), line.getQuantity());
+        assertEquals(item.getPriceCents() * 2, line.getLineTotalCents());
+        assertEquals(item.getPriceCents() * 2, responseBody.getTotalCents());
+    }
+
+    @Test
+    public void add_to_cart_merges_quantity_into_one_line() {
+        Item item = getTestItem();
+        User user = getTestUserWithCartItems();
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(item.getId());
+        cartRequest.setQuantity(500);
+        cartRequest.setUsername(user.getUsername());
+
+        ResponseEntity<Cart> responseEntity = cartController.addToCart(cartRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(200, responseEntity.getStatusCodeValue());
+
+        Cart responseBody = responseEntity.getBody();
+        assertEquals(1, responseBody.getLines().size());
+        assertEquals(501, responseBody.getQuantity(item.getId()));
+        assertEquals(item.getPriceCents() * 501, responseBody.getTotalCents());
+    }
+
+    @Test
+    public void remove_more_than_in_cart_only_removes_present_units() {
+        Item item = getTestItem();
+        User user = getTestUserWithCartItems();
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(item.getId());
+        cartRequest.setQuantity(3);
+        cartRequest.setUsername(user.getUsername());
+
+        ResponseEntity<Cart> responseEntity = cartController.removeFromCart(cartRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(200, responseEntity.getStatusCodeValue());
+
+        Cart responseBody = responseEntity.getBody();
+        assertTrue(responseBody.getLines().isEmpty());
+        assertEquals(0, responseBody.getTotalCents());
     }
 
     @Test
@@ -85,8 +170,8 @@ public class CartControllerTest {
         assertEquals(200, responseEntity.getStatusCodeValue());
 
         Cart responseBody = responseEntity.getBody();
-        assertTrue(responseBody.getItems().isEmpty());
-        assertEquals(item.getPrice().subtract(item.getPrice()), responseBody.getTotal());
+        assertTrue(responseBody.getLines().isEmpty());
+        assertEquals(0, responseBody.getTotalCents());
     }
 
     @Test
@@ -153,6 +238,278 @@ public class CartControllerTest {
         assertEquals(404, responseEntity.getStatusCodeValue());
     }
 
+    @Test
+    public void add_to_cart_retries_on_version_conflict() {
+        Item item = getTestItem();
+        when(cartRepository.save(any(Cart.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Cart.class, 2L))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(item.getId());
+        cartRequest.setQuantity(2);
+        cartRequest.setUsername("testConflict");
+
+        ResponseEntity<Cart> responseEntity = cartController.addToCart(cartRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(200, responseEntity.getStatusCodeValue());
+        assertEquals(3, responseEntity.getBody().getQuantity(item.getId()));
+        verify(cartRepository, times(2)).findById(3L);
+        verify(cartRepository, times(2)).save(any(Cart.class));
+    }
+
+    @Test(expected = ObjectOptimisticLockingFailureException.class)
+    public void add_to_cart_gives_up_after_repeated_conflicts() {
+        Item item = getTestItem();
+        when(cartRepository.save(any(Cart.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Cart.class, 2L));
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(item.getId());
+        cartRequest.setQuantity(1);
+        cartRequest.setUsername("testConflict");
+
+        cartController.addToCart(cartRequest);
+    }
+
+    @Test
+    public void add_to_cart_reads_the_cart_only_after_taking_its_lock() throws Exception {
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(1L);
+        cartRequest.setQuantity(1);
+        cartRequest.setUsername("test2");
+
+        Lock lock = cartLocks.lockFor(2L);
+        lock.lock();
+        boolean locked = true;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ResponseEntity<Cart>> response = executor.submit(() -> cartController.addToCart(cartRequest));
+
+            verify(cartRepository, after(100).never()).findById(2L);
+            lock.unlock();
+            locked = false;
+            assertEquals(200, response.get(5, TimeUnit.SECONDS).getStatusCodeValue());
+            verify(cartRepository).findById(2L);
+        } finally {
+            if(locked) {
+                lock.unlock();
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void write_behind_responses_do_not_change_with_the_live_cart() {
+        CartStore cartStore = new CartStore();
+        TestUtils.injectObjects(cartStore, "cartRepository", cartRepository);
+        TestUtils.injectObjects(cartStore, "cartLocks", cartLocks);
+        TestUtils.injectObjects(cartStore, "entityManager", mock(EntityManager.class));
+        TestUtils.injectObjects(cartStore, "writeBehind", true);
+        TestUtils.injectObjects(cartStore, "maxCarts", 10);
+        TestUtils.injectObjects(cartController, "cartStore", cartStore);
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(1L);
+        cartRequest.setQuantity(1);
+        cartRequest.setUsername("test2");
+
+        ResponseEntity<Cart> first = cartController.addToCart(cartRequest);
+        ResponseEntity<Cart> read = cartController.getCart("test2", null);
+        ResponseEntity<Cart> second = cartController.addToCart(cartRequest);
+
+        assertEquals(2, first.getBody().getQuantity(1L));
+        assertEquals(2, read.getBody().getQuantity(1L));
+        assertEquals(first.getHeaders().getETag(), read.getHeaders().getETag());
+        assertEquals(3, second.getBody().getQuantity(1L));
+        assertNotSame(first.getBody(), second.getBody());
+    }
+
+    @Test
+    public void add_to_cart_delta_returns_changed_line_only() {
+        Item item = getTestItem();
+        User user = getTestUserWithCartItems();
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(item.getId());
+        cartRequest.setQuantity(2);
+        cartRequest.setUsername(user.getUsername());
+
+        ResponseEntity<CartDelta> responseEntity = cartController.addToCartDelta(cartRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(200, responseEntity.getStatusCodeValue());
+
+        CartDelta responseBody = responseEntity.getBody();
+        assertEquals(user.getCart().getId(), responseBody.getCartId());
+        assertEquals(item.getPriceCents() * 3, responseBody.getTotalCents());
+        assertEquals(1, responseBody.getLines().size());
+        assertEquals(3, responseBody.getLines().get(0).getQuantity());
+        assertEquals(item.getPriceCents() * 3, responseBody.getLines().get(0).getLineTotalCents());
+        assertEquals(responseEntity.getHeaders().getETag(), responseBody.getEtag());
+    }
+
+    @Test
+    public void remove_from_cart_delta_reports_removed_line() {
+        Item item = getTestItem();
+        User user = getTestUserWithCartItems();
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(item.getId());
+        cartRequest.setQuantity(1);
+        cartRequest.setUsername(user.getUsername());
+
+        ResponseEntity<CartDelta> responseEntity = cartController.removeFromCartDelta(cartRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(200, responseEntity.getStatusCodeValue());
+
+        CartDelta responseBody = responseEntity.getBody();
+        assertEquals(0, responseBody.getTotalCents());
+        assertEquals(1, responseBody.getLines().size());
+        assertEquals(0, responseBody.getLines().get(0).getQuantity());
+    }
+
+    @Test
+    public void get_cart_honors_if_none_match() {
+        User user = getTestUserWithCartItems();
+
+        ResponseEntity<Cart> responseEntity1 = cartController.getCart(user.getUsername(), null);
+
+        assertNotNull(responseEntity1);
+        assertEquals(200, responseEntity1.getStatusCodeValue());
+        assertEquals(1, responseEntity1.getBody().getQuantity(1L));
+        String etag = responseEntity1.getHeaders().getETag();
+        assertNotNull(etag);
+
+        ResponseEntity<Cart> responseEntity2 = cartController.getCart(user.getUsername(), etag);
+
+        assertEquals(304, responseEntity2.getStatusCodeValue());
+        assertNull(responseEntity2.getBody());
+        assertEquals(etag, responseEntity2.getHeaders().getETag());
+
+        ResponseEntity<Cart> responseEntity3 = cartController.getCart(user.getUsername(), "\"cart-2-0\"");
+
+        assertEquals(200, responseEntity3.getStatusCodeValue());
+    }
+
+    @Test
+    public void get_cart_with_invalid_user() {
+        ResponseEntity<Cart> responseEntity = cartController.getCart("testUserNotFound", null);
+
+        assertNotNull(responseEntity);
+        assertEquals(404, responseEntity.getStatusCodeValue());
+    }
+
+    @Test
+    public void cart_etag_changes_with_content() {
+        User user = getTestUserWithCartItems();
+        String before = cartController.getCart(user.getUsername(), null).getHeaders().getETag();
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(1L);
+        cartRequest.setQuantity(1);
+        cartRequest.setUsername(user.getUsername());
+        String after = cartController.addToCart(cartRequest).getHeaders().getETag();
+
+        assertNotEquals(before, after);
+    }
+
+    @Test
+    public void modify_cart_batch_happy_path() {
+        Item item = getTestItem();
+        User user = getTestUserWithCartItems();
+
+        ModifyCartBatchRequest batchRequest = new ModifyCartBatchRequest();
+        batchRequest.setUsername(user.getUsername());
+        batchRequest.setOperations(Arrays.asList(
+                getCartOperation(CartOperation.Action.ADD, item.getId(), 5),
+                getCartOperation(CartOperation.Action.REMOVE, item.getId(), 2),
+                getCartOperation(CartOperation.Action.ADD, item.getId(), 1)));
+
+        ResponseEntity<Cart> responseEntity = cartController.modifyCart(batchRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(200, responseEntity.getStatusCodeValue());
+
+        Cart responseBody = responseEntity.getBody();
+        assertEquals(5, responseBody.getQuantity(item.getId()));
+        assertEquals(item.getPriceCents() * 5, responseBody.getTotalCents());
+    }
+
+    @Test
+    public void modify_cart_batch_with_invalid_item() {
+        User user = getTestUser();
+
+        ModifyCartBatchRequest batchRequest = new ModifyCartBatchRequest();
+        batchRequest.setUsername(user.getUsername());
+        batchRequest.setOperations(Arrays.asList(
+                getCartOperation(CartOperation.Action.ADD, 1L, 1),
+                getCartOperation(CartOperation.Action.ADD, 2L, 1)));
+
+        ResponseEntity<Cart> responseEntity = cartController.modifyCart(batchRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(404, responseEntity.getStatusCodeValue());
+    }
+
+    @Test
+    public void modify_cart_batch_with_invalid_user() {
+        ModifyCartBatchRequest batchRequest = new ModifyCartBatchRequest();
+        batchRequest.setUsername("testUserNotFound");
+        batchRequest.setOperations(Collections.singletonList(getCartOperation(CartOperation.Action.ADD, 1L, 1)));
+
+        ResponseEntity<Cart> responseEntity = cartController.modifyCart(batchRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(404, responseEntity.getStatusCodeValue());
+    }
+
+    @Test
+    public void modify_cart_batch_without_operations() {
+        ModifyCartBatchRequest batchRequest = new ModifyCartBatchRequest();
+        batchRequest.setUsername("test");
+
+        ResponseEntity<Cart> responseEntity = cartController.modifyCart(batchRequest);
+
+        assertNotNull(responseEntity);
+        assertEquals(400, responseEntity.getStatusCodeValue());
+    }
+
+    private CartOperation getCartOperation(CartOperation.Action action, long itemId, int quantity) {
+        CartOperation operation = new CartOperation();
+        operation.setAction(action);
+        operation.setItemId(itemId);
+        operation.setQuantity(quantity);
+
+        return operation;
+    }
+
+    @Test
+    public void cart_json_keeps_the_deprecated_items_view() throws Exception {
+        Cart cart = new Cart();
+        cart.setId(1L);
+        cart.addItem(getTestItem(), 2);
+        Item other = getTestItem();
+        other.setId(2L);
+        other.setName("Square Widget");
+        cart.addItem(other, 1);
+
+        JsonNode json = new ObjectMapper().readTree(new ObjectMapper().writeValueAsString(cart));
+
+        assertEquals(2, json.get("lines").size());
+        JsonNode items = json.get("items");
+        assertEquals(3, items.size());
+        assertEquals(1L, items.get(0).get("id").asLong());
+        assertEquals(1L, items.get(1).get("id").asLong());
+        assertEquals("Square Widget", items.get(2).get("name").asText());
+
+        Cart read = new ObjectMapper().readValue(json.toString(), Cart.class);
+        assertEquals(2, read.getQuantity(1L));
+        assertEquals(3, read.getItems().size());
+    }
+
     private User getTestUser() {
         User user = new User();
         Cart cart = new Cart();
@@ -182,7 +539,7 @@ public class CartControllerTest {
         Item item = new Item();
         item.setId(1L);
         item.setName("Round Widget");
-        item.setPrice(BigDecimal.valueOf(2.99));
+        item.setPriceCents(299);
         item.setDescription("A widget that is round");
 
         return item;
@@ -1,20 +1,41 @@
 package com.example.demo.controllers;
 
 import com.example.demo.TestUtils;
+import com.example.demo.catalog.CatalogVersion;
+import com.example.demo.catalog.ItemCache;
+import com.example.demo.catalog.ItemChangedEvent;
+import com.example.demo.catalog.ItemJsonCache;
+import com.example.demo.catalog.ItemListing;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ItemPage;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
 
-import java.math.BigDecimal;
+import javax.persistence.EntityManager;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class ItemControllerTest {
@@ -23,10 +44,34 @@ public class ItemControllerTest {
 
     private final ItemRepository itemRepository = mock(ItemRepository.class);
 
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    private final CatalogVersion catalogVersion = new CatalogVersion();
+
+    private ItemCache itemCache;
+
+    private ItemJsonCache itemJsonCache;
+
     @Before
     public void init() {
         itemController = new ItemController();
         TestUtils.injectObjects(itemController, "itemRepository", itemRepository);
+        itemCache = new ItemCache(100, 100, 60);
+        TestUtils.injectObjects(itemCache, "itemRepository", itemRepository);
+        TestUtils.injectObjects(itemController, "itemCache", itemCache);
+        itemJsonCache = new ItemJsonCache(100, 100, 60);
+        TestUtils.injectObjects(itemJsonCache, "objectMapper", objectMapper);
+        TestUtils.injectObjects(itemController, "itemJsonCache", itemJsonCache);
+        ItemListing itemListing = new ItemListing();
+        TestUtils.injectObjects(itemListing, "itemRepository", itemRepository);
+        TestUtils.injectObjects(itemListing, "itemJsonCache", itemJsonCache);
+        TestUtils.injectObjects(itemListing, "entityManager", mock(EntityManager.class));
+        TestUtils.injectObjects(itemController, "itemListing", itemListing);
+        TestUtils.injectObjects(catalogVersion, "jdbcTemplate", jdbcTemplate);
+        TestUtils.injectObjects(itemController, "catalogVersion", catalogVersion);
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class))).thenReturn(Collections.singletonList(0L));
 
         List<Item> itemsList = new ArrayList<>();
         itemsList.add(getTestItem());
@@ -37,23 +82,136 @@ public class ItemControllerTest {
     }
 
     @Test
-    public void get_item_by_id_happy_path() {
+    public void get_item_by_id_happy_path() throws Exception {
         Item item = getTestItem();
 
-        ResponseEntity<Item> responseEntity = itemController.getItemById(item.getId());
+        ResponseEntity<byte[]> responseEntity = itemController.getItemById(item.getId(), null);
 
         assertNotNull(responseEntity);
         assertEquals(200, responseEntity.getStatusCodeValue());
 
-        Item responseBody = responseEntity.getBody();
+        Item responseBody = objectMapper.readValue(responseEntity.getBody(), Item.class);
 
         assertNotNull(responseBody);
         assertEquals(item.getId(), responseBody.getId());
         assertEquals(item.getName(), responseBody.getName());
-        assertEquals(item.getPrice(), responseBody.getPrice());
+        assertEquals(item.getPriceCents(), responseBody.getPriceCents());
         assertEquals(item.getDescription(), responseBody.getDescription());
     }
 
+    @Test
+    public void get_item_by_id_reuses_encoded_json() {
+        byte[] first = itemController.getItemById(1L, null).getBody();
+        byte[] second = itemController.getItemById(1L, null).getBody();
+
+        assertSame(first, second);
+        verify(itemRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    public void stale_item_instance_does_not_bring_back_old_json() throws Exception {
+        Item stale = getTestItem();
+        stale.setVersion(1L);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(stale));
+        itemController.getItemById(1L, null);
+
+        Item changed = getTestItem();
+        changed.setVersion(2L);
+        changed.setPriceCents(399);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(changed));
+        ItemChangedEvent event = new ItemChangedEvent(1L, changed.getName());
+        itemCache.onItemChanged(event);
+        itemJsonCache.onItemChanged(event);
+
+        // e.g. a cart line still holding the old item is serialized
+        itemJsonCache.json(stale);
+
+        Item responseBody = objectMapper.readValue(itemController.getItemById(1L, null).getBody(), Item.class);
+        assertEquals(399, responseBody.getPriceCents());
+    }
+
+    @Test
+    public void get_item_by_id_not_found_path() {
+        when(itemRepository.findById(2L)).thenReturn(Optional.empty());
+
+        assertEquals(404, itemController.getItemById(2L, null).getStatusCodeValue());
+    }
+
+    @Test
+    public void get_item_by_id_not_modified_from_cached_item() {
+        String etag = itemController.getItemById(1L, null).getHeaders().getETag();
+
+        ResponseEntity<byte[]> responseEntity = itemController.getItemById(1L, etag);
+
+        assertEquals(304, responseEntity.getStatusCodeValue());
+        assertEquals(etag, responseEntity.getHeaders().getETag());
+        verify(itemRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    public void missing_item_is_never_not_modified() {
+        Item item = getTestItem();
+        item.setId(2L);
+        when(itemRepository.findById(2L)).thenReturn(Optional.empty());
+
+        assertEquals(404, itemController.getItemById(2L, CatalogVersion.itemETag(item)).getStatusCodeValue());
+    }
+
+    @Test
+    public void item_etag_follows_the_row_version() {
+        String itemTag = itemController.getItemById(1L, null).getHeaders().getETag();
+
+        Item changed = getTestItem();
+        changed.setVersion(1L);
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(changed));
+        itemCache.onItemChanged(new ItemChangedEvent(1L, changed.getName()));
+
+        ResponseEntity<byte[]> responseEntity = itemController.getItemById(1L, itemTag);
+        assertEquals(200, responseEntity.getStatusCodeValue());
+        assertNotEquals(itemTag, responseEntity.getHeaders().getETag());
+        // the same row version always gets the same tag, whichever node serves it
+        assertEquals(CatalogVersion.itemETag(changed), responseEntity.getHeaders().getETag());
+    }
+
+    @Test
+    public void catalog_etag_follows_the_stored_revision() {
+        String catalogTag = catalogVersion.catalogETag();
+
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class))).thenReturn(Collections.singletonList(1L));
+
+        assertNotEquals(catalogTag, catalogVersion.catalogETag());
+        assertEquals(CatalogVersion.catalogETag(1L), catalogVersion.catalogETag());
+    }
+
+    @Test
+    public void page_cached_at_an_older_revision_is_not_served() throws Exception {
+        when(itemRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2)))
+                .thenReturn(Collections.singletonList(getTestItem()));
+        itemController.getItemPage(2, 0, null);
+
+        // another node added an item and bumped the revision; no local event arrives
+        Item second = getTestItem();
+        second.setId(2L);
+        when(itemRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(getTestItem(), second));
+        when(jdbcTemplate.queryForList(anyString(), eq(Long.class))).thenReturn(Collections.singletonList(1L));
+
+        ResponseEntity<byte[]> responseEntity = itemController.getItemPage(2, 0, null);
+        assertEquals(CatalogVersion.catalogETag(1L), responseEntity.getHeaders().getETag());
+        assertEquals(2, objectMapper.readValue(responseEntity.getBody(), ItemPage.class).getItems().size());
+    }
+
+    @Test
+    public void get_items_not_modified_skips_listing() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        itemController.getItems(response, catalogVersion.catalogETag());
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        verify(itemRepository, never()).streamAllOrderById();
+    }
+
     @Test
     public void get_item_by_name_happy_path() {
         Item item = getTestItem();
@@ -69,7 +227,7 @@ public class ItemControllerTest {
         assertEquals(1, responseBody.size());
         assertEquals(responseBody.get(0).getId(), item.getId());
         assertEquals(responseBody.get(0).getName(), item.getName());
-        assertEquals(responseBody.get(0).getPrice(), item.getPrice());
+        assertEquals(responseBody.get(0).getPriceCents(), item.getPriceCents());
         assertEquals(responseBody.get(0).getDescription(), item.getDescription());
     }
 
@@ -81,12 +239,59 @@ public class ItemControllerTest {
         assertEquals(404, responseEntity.getStatusCodeValue());
     }
 
+    @Test
+    public void get_items_streams_json_array() throws Exception {
+        Item second = getTestItem();
+        second.setId(2L);
+        when(itemRepository.streamAllOrderById()).thenReturn(Stream.of(getTestItem(), second));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        itemController.getItems(response, null);
+
+        Item[] items = objectMapper.readValue(response.getContentAsByteArray(), Item[].class);
+        assertEquals(2, items.length);
+        assertEquals(Long.valueOf(1), items[0].getId());
+        assertEquals(Long.valueOf(2), items[1].getId());
+        assertEquals(299, items[1].getPriceCents());
+    }
+
+    @Test
+    public void get_item_page_returns_cursor_when_full() throws Exception {
+        Item second = getTestItem();
+        second.setId(2L);
+        when(itemRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(getTestItem(), second));
+        when(itemRepository.findByIdGreaterThanOrderByIdAsc(2L, PageRequest.of(0, 2)))
+                .thenReturn(Collections.emptyList());
+
+        ItemPage first = objectMapper.readValue(itemController.getItemPage(2, 0, null).getBody(), ItemPage.class);
+        assertEquals(2, first.getItems().size());
+        assertEquals(Long.valueOf(2), first.getNextAfter());
+
+        ItemPage last = objectMapper.readValue(itemController.getItemPage(2, first.getNextAfter(), null).getBody(), ItemPage.class);
+        assertEquals(0, last.getItems().size());
+        assertNull(last.getNextAfter());
+    }
+
+    @Test
+    public void get_item_page_rejects_bad_limit() {
+        assertEquals(400, itemController.getItemPage(0, 0, null).getStatusCodeValue());
+        assertEquals(400, itemController.getItemPage(1001, 0, null).getStatusCodeValue());
+    }
+
+    @Test
+    public void suggest_rejects_bad_limit() {
+        assertEquals(400, itemController.suggestItemNames("ro", 0).getStatusCodeValue());
+        assertEquals(400, itemController.suggestItemNames("ro", 21).getStatusCodeValue());
+    }
+
     private Item getTestItem() {
         Item item = new Item();
         item.setId(1L);
         item.setName("Round Widget");
-        item.setPrice(BigDecimal.valueOf(2.99));
+        item.setPriceCents(299);
         item.setDescription("A widget that is round");
+        item.setVersion(0L);
 
         return item;
     }
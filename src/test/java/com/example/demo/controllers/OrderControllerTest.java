@@ -1,22 +1,45 @@
 package com.example.demo.controllers;
 
 import com.example.demo.TestUtils;
+import com.example.demo.cart.CartStore;
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.UserOrderStats;
+import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.OrderRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderHistoryPage;
+import com.example.demo.model.responses.OrderSummary;
+import com.example.demo.order.OrderHistoryCache;
+import com.example.demo.order.OrderIdempotency;
+import com.example.demo.order.OrderPipeline;
+import com.example.demo.order.OrderStats;
+import com.example.demo.order.OrderSubmission;
+import com.example.demo.security.JwtPrincipal;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 
-import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class OrderControllerTest {
@@ -25,65 +48,218 @@ public class OrderControllerTest {
 
     private final UserRepository userRepository = mock(UserRepository.class);
 
+    private final CartRepository cartRepository = mock(CartRepository.class);
+
     private final OrderRepository orderRepository = mock(OrderRepository.class);
 
+    private final OrderStats orderStats = mock(OrderStats.class);
+
     @Before
     public void init() {
         orderController = new OrderController();
-        TestUtils.injectObjects(orderController, "userRepository", userRepository);
+        UserLookup userLookup = new UserLookup();
+        TestUtils.injectObjects(userLookup, "userRepository", userRepository);
+        TestUtils.injectObjects(userLookup, "cartRepository", cartRepository);
+        TestUtils.injectObjects(orderController, "userLookup", userLookup);
         TestUtils.injectObjects(orderController, "orderRepository", orderRepository);
+        TestUtils.injectObjects(orderController, "cartStore", new CartStore());
+        TestUtils.injectObjects(orderController, "orderIdempotency", new OrderIdempotency(100, 1));
+        TestUtils.injectObjects(orderController, "orderPipeline", new OrderPipeline());
+        TestUtils.injectObjects(orderController, "orderStats", orderStats);
+        OrderHistoryCache orderHistoryCache = new OrderHistoryCache(100, 60);
+        TestUtils.injectObjects(orderHistoryCache, "orderRepository", orderRepository);
+        TestUtils.injectObjects(orderController, "orderHistoryCache", orderHistoryCache);
 
         User user = getTestUserWithCartItems();
         when(userRepository.findByUsername(user.getUsername())).thenReturn(user);
         when(userRepository.findByUsername("testInvalidUsername")).thenReturn(null);
-        when(orderRepository.findByUser(user)).thenReturn(getTestOrders());
+        when(orderRepository.findSummaries(eq(user.getId()), anyLong(), any(Pageable.class))).thenReturn(getTestSummaries());
+    }
+
+    @After
+    public void clearPrincipal() {
+        SecurityContextHolder.clearContext();
     }
 
     @Test
     public void submit_order_happy_path() {
         User user = getTestUserWithCartItems();
 
-        ResponseEntity<UserOrder> responseEntity = orderController.submit(user.getUsername());
+        ResponseEntity<UserOrder> responseEntity = orderController.submit(user.getUsername(), null);
 
         assertNotNull(responseEntity);
         assertEquals(200, responseEntity.getStatusCodeValue());
 
         UserOrder responseBody = responseEntity.getBody();
 
-        assertEquals(user.getCart().getTotal(), responseBody.getTotal());
-        assertEquals(user.getCart().getItems().size(), responseBody.getItems().size());
+        assertEquals(user.getCart().getTotalCents(), responseBody.getTotalCents());
+        assertEquals(1, responseBody.getLines().size());
+        assertEquals(user.getCart().getQuantity(1L), responseBody.getLines().get(0).getQuantity());
+        assertEquals(299, responseBody.getLines().get(0).getUnitPriceCents());
+        assertEquals("Round Widget", responseBody.getLines().get(0).getName());
         assertEquals(user.getUsername(), responseBody.getUser().getUsername());
     }
 
+    @Test
+    public void submit_order_totals_the_snapshotted_lines() {
+        User user = getTestUserWithCartItems();
+        // the price changed after the item went into the cart
+        user.getCart().getLines().get(0).getItem().setPriceCents(349);
+        when(userRepository.findByUsername(user.getUsername())).thenReturn(user);
+
+        UserOrder order = orderController.submit(user.getUsername(), null).getBody();
+
+        assertEquals(349, order.getLines().get(0).getUnitPriceCents());
+        assertEquals(order.getLines().get(0).getLineTotalCents(), order.getTotalCents());
+        assertNotEquals(user.getCart().getTotalCents(), order.getTotalCents());
+    }
+
+    @Test
+    public void submit_order_replays_idempotency_key() {
+        User user = getTestUserWithCartItems();
+        AtomicLong ids = new AtomicLong(100);
+        when(orderRepository.save(any(UserOrder.class))).thenAnswer(invocation -> {
+            UserOrder order = invocation.getArgument(0);
+            order.setId(ids.incrementAndGet());
+            return order;
+        });
+        UserOrder stored = new UserOrder();
+        stored.setId(101L);
+        when(orderRepository.findByIdAndUserId(101L, user.getId())).thenReturn(stored);
+
+        ResponseEntity<UserOrder> first = orderController.submit(user.getUsername(), "key-1");
+        ResponseEntity<UserOrder> replay = orderController.submit(user.getUsername(), "key-1");
+        ResponseEntity<UserOrder> other = orderController.submit(user.getUsername(), "key-2");
+
+        assertEquals(Long.valueOf(101), first.getBody().getId());
+        assertEquals(200, replay.getStatusCodeValue());
+        // the replay reads the order again instead of returning the remembered response
+        assertSame(stored, replay.getBody());
+        assertEquals("true", replay.getHeaders().getFirst(OrderIdempotency.REPLAYED_HEADER));
+        assertNull(first.getHeaders().getFirst(OrderIdempotency.REPLAYED_HEADER));
+        assertEquals(Long.valueOf(102), other.getBody().getId());
+        verify(orderRepository, times(2)).save(any(UserOrder.class));
+    }
+
+    @Test
+    public void submit_order_rejects_oversized_idempotency_key() {
+        User user = getTestUserWithCartItems();
+        StringBuilder key = new StringBuilder();
+        for(int i = 0; i <= OrderIdempotency.MAX_KEY_LENGTH; i++) {
+            key.append('k');
+        }
+
+        assertEquals(400, orderController.submit(user.getUsername(), key.toString()).getStatusCodeValue());
+    }
+
+    @Test
+    public void submit_async_without_pipeline_saves_order_right_away() {
+        User user = getTestUserWithCartItems();
+
+        ResponseEntity<OrderSubmission> responseEntity = orderController.submitAsync(user.getUsername(), null);
+
+        assertEquals(200, responseEntity.getStatusCodeValue());
+        OrderSubmission submission = responseEntity.getBody();
+        assertEquals(OrderSubmission.Status.COMPLETED, submission.getStatus());
+        assertEquals(user.getCart().getTotalCents(), submission.getTotalCents());
+        verify(orderRepository).save(any(UserOrder.class));
+
+        assertSame(submission, orderController.getSubmission(user.getUsername(), submission.getId()).getBody());
+        assertEquals(404, orderController.getSubmission("someoneElse", submission.getId()).getStatusCodeValue());
+    }
+
     @Test
     public void get_orders_for_user_happy_path() {
         User user = getTestUserWithCartItems();
-        List<UserOrder> orders = getTestOrders();
 
-        ResponseEntity<List<UserOrder>> responseEntity = orderController.getOrdersForUser(user.getUsername());
+        ResponseEntity<OrderHistoryPage> responseEntity = orderController.getOrdersForUser(user.getUsername(), 2, null);
 
         assertNotNull(responseEntity);
         assertEquals(200, responseEntity.getStatusCodeValue());
 
-        List<UserOrder> responseBody = responseEntity.getBody();
+        OrderHistoryPage responseBody = responseEntity.getBody();
 
         assertNotNull(responseBody);
-        assertEquals(orders.size(), responseBody.size());
+        assertEquals(2, responseBody.getOrders().size());
+        assertEquals(Long.valueOf(7), responseBody.getOrders().get(0).getId());
+        assertEquals(897, responseBody.getOrders().get(0).getTotalCents());
+        assertEquals(1, responseBody.getOrders().get(0).getLineCount());
+        assertEquals(Long.valueOf(6), responseBody.getNextBefore());
+    }
+
+    @Test
+    public void get_orders_for_user_last_page_has_no_cursor() {
+        User user = getTestUserWithCartItems();
 
-        assertEquals(orders.get(0).getItems().size(), responseBody.get(0).getItems().size());
-        assertEquals(orders.get(0).getTotal(), responseBody.get(0).getTotal());
-        assertEquals(orders.get(0).getUser().getUsername(), responseBody.get(0).getUser().getUsername());
-        assertEquals(orders.get(0).getItems().get(0).getId(), responseBody.get(0).getItems().get(0).getId());
+        OrderHistoryPage responseBody = orderController.getOrdersForUser(user.getUsername(), 20, 8L).getBody();
 
-        assertEquals(orders.get(1).getItems().size(), responseBody.get(1).getItems().size());
-        assertEquals(orders.get(1).getTotal(), responseBody.get(1).getTotal());
-        assertEquals(orders.get(1).getUser().getUsername(), responseBody.get(1).getUser().getUsername());
-        assertEquals(orders.get(1).getItems().get(0).getId(), responseBody.get(1).getItems().get(0).getId());
+        assertEquals(2, responseBody.getOrders().size());
+        assertNull(responseBody.getNextBefore());
+    }
+
+    @Test
+    public void get_orders_for_user_rejects_invalid_page_size() {
+        assertEquals(400, orderController.getOrdersForUser("test", 0, null).getStatusCodeValue());
+        assertEquals(400, orderController.getOrdersForUser("test", 101, null).getStatusCodeValue());
+    }
+
+    @Test
+    public void get_order_for_user_happy_path() {
+        User user = getTestUserWithCartItems();
+        UserOrder order = UserOrder.createFromCart(user.getCart());
+        order.setId(7L);
+        when(orderRepository.findByIdAndUserId(7L, user.getId())).thenReturn(order);
+
+        ResponseEntity<UserOrder> responseEntity = orderController.getOrderForUser(user.getUsername(), 7L);
+
+        assertEquals(200, responseEntity.getStatusCodeValue());
+        assertSame(order, responseEntity.getBody());
+        assertEquals(404, orderController.getOrderForUser(user.getUsername(), 8L).getStatusCodeValue());
+        assertEquals(404, orderController.getOrderForUser("testInvalidUsername", 7L).getStatusCodeValue());
+    }
+
+    @Test
+    public void get_stats_for_user_happy_path() {
+        User user = getTestUserWithCartItems();
+        UserOrderStats stats = new UserOrderStats(user.getId());
+        stats.setOrderCount(3);
+        stats.setTotalSpentCents(1196);
+        when(orderStats.get(user.getId())).thenReturn(stats);
+
+        ResponseEntity<UserOrderStats> responseEntity = orderController.getStatsForUser(user.getUsername());
+
+        assertEquals(200, responseEntity.getStatusCodeValue());
+        assertSame(stats, responseEntity.getBody());
+        assertEquals(404, orderController.getStatsForUser("testInvalidUsername").getStatusCodeValue());
+    }
+
+    @Test
+    public void token_ids_of_the_same_user_skip_the_username_lookup() {
+        User user = getTestUserWithCartItems();
+        when(cartRepository.findById(user.getCart().getId())).thenReturn(Optional.of(user.getCart()));
+        when(orderStats.get(user.getId())).thenReturn(new UserOrderStats(user.getId()));
+        authenticate(new JwtPrincipal(user.getUsername(), user.getId(), user.getCart().getId()));
+
+        assertEquals(200, orderController.getStatsForUser(user.getUsername()).getStatusCodeValue());
+        assertEquals(200, orderController.submit(user.getUsername(), null).getStatusCodeValue());
+
+        verify(userRepository, never()).findByUsername(user.getUsername());
+    }
+
+    @Test
+    public void token_of_another_user_falls_back_to_the_username_lookup() {
+        User user = getTestUserWithCartItems();
+        authenticate(new JwtPrincipal("someoneElse", 2L, 2L));
+
+        assertEquals(200, orderController.submit(user.getUsername(), null).getStatusCodeValue());
+
+        verify(userRepository).findByUsername(user.getUsername());
+        verify(cartRepository, never()).findById(any());
     }
 
     @Test
     public void get_orders_for_user_with_invalid_username() {
-        ResponseEntity<UserOrder> responseEntity = orderController.submit("testInvalidUsername");
+        ResponseEntity<UserOrder> responseEntity = orderController.submit("testInvalidUsername", null);
 
         assertNotNull(responseEntity);
         assertEquals(404, responseEntity.getStatusCodeValue());
@@ -91,7 +267,7 @@ public class OrderControllerTest {
 
     @Test
     public void submit_order_with_invalid_username() {
-        ResponseEntity<List<UserOrder>> responseEntity = orderController.getOrdersForUser("testInvalidUsername");
+        ResponseEntity<OrderHistoryPage> responseEntity = orderController.getOrdersForUser("testInvalidUsername", 20, null);
 
         assertNotNull(responseEntity);
         assertEquals(404, responseEntity.getStatusCodeValue());
@@ -114,23 +290,22 @@ public class OrderControllerTest {
         Item item = new Item();
         item.setId(1L);
         item.setName("Round Widget");
-        item.setPrice(BigDecimal.valueOf(2.99));
+        item.setPriceCents(299);
         item.setDescription("A widget that is round");
 
         return item;
     }
 
-    private List<UserOrder> getTestOrders() {
-        User user = getTestUserWithCartItems();
-        UserOrder order1 = UserOrder.createFromCart(user.getCart());
-        user.getCart().addItem(getTestItem());
-        user.getCart().addItem(getTestItem());
-        UserOrder order2 = UserOrder.createFromCart(user.getCart());
+    private List<OrderSummary> getTestSummaries() {
+        List<OrderSummary> summaries = new ArrayList<>();
+        summaries.add(new OrderSummary(7L, Instant.now(), 897, 1));
+        summaries.add(new OrderSummary(6L, Instant.now().minusSeconds(60), 299, 1));
 
-        List<UserOrder> orders = new ArrayList<>();
-        orders.add(order1);
-        orders.add(order2);
+        return summaries;
+    }
 
-        return orders;
+    private void authenticate(JwtPrincipal principal) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, new ArrayList<>()));
     }
 }
@@ -5,16 +5,23 @@ import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.security.LoginThrottle;
+import com.example.demo.security.PasswordHashingBusyException;
 import org.junit.Before;
 import org.junit.Test;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import java.util.Optional;
 
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class UserControllerTest {
@@ -27,12 +34,17 @@ public class UserControllerTest {
 
     private final BCryptPasswordEncoder bCryptPasswordEncoder = mock(BCryptPasswordEncoder.class);
 
+    private final LoginThrottle loginThrottle = new LoginThrottle(60, 20, 10, 2, 100);
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+
     @Before
     public void init() {
         userController = new UserController();
         TestUtils.injectObjects(userController,"userRepository", userRepository);
         TestUtils.injectObjects(userController, "cartRepository", cartRepository);
         TestUtils.injectObjects(userController, "bCryptPasswordEncoder", bCryptPasswordEncoder);
+        TestUtils.injectObjects(userController, "loginThrottle", loginThrottle);
     }
 
     @Test
@@ -44,7 +56,7 @@ public class UserControllerTest {
         createUserRequest.setPassword("testpass");
         createUserRequest.setConfirmPassword("testpass");
 
-        final ResponseEntity<User> responseEntity = userController.createUser(createUserRequest);
+        final ResponseEntity<User> responseEntity = userController.createUser(createUserRequest, request);
 
         assertNotNull(responseEntity);
         assertEquals(200, responseEntity.getStatusCodeValue());
@@ -56,6 +68,58 @@ public class UserControllerTest {
         assertEquals("thisIsHashed", u.getPassword());
     }
 
+    @Test
+    public void create_user_when_username_is_over_its_rate() {
+        when(bCryptPasswordEncoder.encode("testpass")).thenReturn("thisIsHashed");
+
+        CreateUserRequest createUserRequest = new CreateUserRequest();
+        createUserRequest.setUsername("test");
+        createUserRequest.setPassword("testpass");
+        createUserRequest.setConfirmPassword("testpass");
+
+        assertEquals(200, userController.createUser(createUserRequest, request).getStatusCodeValue());
+        createUserRequest.setUsername("TEST");
+        assertEquals(200, userController.createUser(createUserRequest, request).getStatusCodeValue());
+        final ResponseEntity<User> responseEntity = userController.createUser(createUserRequest, request);
+
+        assertEquals(429, responseEntity.getStatusCodeValue());
+        assertEquals("6", responseEntity.getHeaders().getFirst("Retry-After"));
+        verify(bCryptPasswordEncoder, times(2)).encode("testpass");
+    }
+
+    @Test
+    public void username_over_its_rate_from_one_address_is_allowed_from_another() {
+        when(bCryptPasswordEncoder.encode("testpass")).thenReturn("thisIsHashed");
+
+        CreateUserRequest createUserRequest = new CreateUserRequest();
+        createUserRequest.setUsername("test");
+        createUserRequest.setPassword("testpass");
+        createUserRequest.setConfirmPassword("testpass");
+        request.setRemoteAddr("10.0.0.1");
+        userController.createUser(createUserRequest, request);
+        userController.createUser(createUserRequest, request);
+        assertEquals(429, userController.createUser(createUserRequest, request).getStatusCodeValue());
+
+        request.setRemoteAddr("10.0.0.2");
+        assertEquals(200, userController.createUser(createUserRequest, request).getStatusCodeValue());
+    }
+
+    @Test
+    public void create_user_when_password_hashing_is_saturated() {
+        when(bCryptPasswordEncoder.encode("testpass")).thenThrow(new PasswordHashingBusyException("busy"));
+
+        CreateUserRequest createUserRequest = new CreateUserRequest();
+        createUserRequest.setUsername("test");
+        createUserRequest.setPassword("testpass");
+        createUserRequest.setConfirmPassword("testpass");
+
+        final ResponseEntity<User> responseEntity = userController.createUser(createUserRequest, request);
+
+        assertEquals(503, responseEntity.getStatusCodeValue());
+        assertEquals("1", responseEntity.getHeaders().getFirst("Retry-After"));
+        verify(userRepository, never()).save(any(User.class));
+    }
+
     @Test
     public void find_by_username_happy_path() {
         User user = getTestUser();
@@ -81,7 +145,7 @@ public class UserControllerTest {
         createUserRequest.setPassword("short");
         createUserRequest.setConfirmPassword("short");
 
-        final ResponseEntity<User> responseEntity = userController.createUser(createUserRequest);
+        final ResponseEntity<User> responseEntity = userController.createUser(createUserRequest, request);
 
         assertNotNull(responseEntity);
         assertEquals(400, responseEntity.getStatusCodeValue());
@@ -89,7 +153,7 @@ public class UserControllerTest {
         // password and confirm password not match case
         createUserRequest.setPassword("testPass");
 
-        final ResponseEntity<User> responseEntity2 = userController.createUser(createUserRequest);
+        final ResponseEntity<User> responseEntity2 = userController.createUser(createUserRequest, request);
 
         assertNotNull(responseEntity2);
         assertEquals(400, responseEntity2.getStatusCodeValue());
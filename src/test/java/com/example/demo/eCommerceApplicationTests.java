@@ -4,11 +4,15 @@ import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OrderLine;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.UserOrderStats;
 import com.example.demo.model.requests.CreateUserRequest;
 import com.example.demo.model.requests.LoginUserRequest;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.OrderHistoryPage;
+import com.example.demo.security.JwtPrincipal;
 import com.example.demo.security.SecurityConstants;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -20,7 +24,6 @@ import org.springframework.http.*;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.math.BigDecimal;
 import java.util.Date;
 
 import static org.junit.Assert.*;
@@ -75,7 +78,7 @@ public class eCommerceApplicationTests {
 		assertNotNull(responseEntity3);
 		assertEquals(HttpStatus.OK, responseEntity3.getStatusCode());
 		assertEquals("test1", createdUser.getUsername());
-		assertNotEquals("testPass", createdUser.getPassword()); // password should be hashed
+		assertNull(createdUser.getPassword()); // the hash is never sent back
 
 		// Test login fail
 		LoginUserRequest loginUserRequest = new LoginUserRequest();
@@ -152,10 +155,10 @@ public class eCommerceApplicationTests {
 		assertEquals(2, items.length);
 		assertEquals("Round Widget", items[0].getName());
 		assertEquals("A widget that is round", items[0].getDescription());
-		assertEquals(BigDecimal.valueOf(2.99), items[0].getPrice());
+		assertEquals(299, items[0].getPriceCents());
 		assertEquals("Square Widget", items[1].getName());
 		assertEquals("A widget that is square", items[1].getDescription());
-		assertEquals(BigDecimal.valueOf(1.99), items[1].getPrice());
+		assertEquals(199, items[1].getPriceCents());
 
 		// test get item by id with auth header
 		ResponseEntity<Item> responseEntity2 =
@@ -165,7 +168,7 @@ public class eCommerceApplicationTests {
 		Item item1 = responseEntity2.getBody();
 		assertEquals("Round Widget", item1.getName());
 		assertEquals("A widget that is round", item1.getDescription());
-		assertEquals(BigDecimal.valueOf(2.99), item1.getPrice());
+		assertEquals(299, item1.getPriceCents());
 
 		// test get item by name with auth header
 		ResponseEntity<Item[]> responseEntity3 =
@@ -175,7 +178,7 @@ public class eCommerceApplicationTests {
 		items = responseEntity3.getBody();
 		assertEquals("Square Widget", items[0].getName());
 		assertEquals("A widget that is square", items[0].getDescription());
-		assertEquals(BigDecimal.valueOf(1.99), items[0].getPrice());
+		assertEquals(199, items[0].getPriceCents());
 
 		// test get all items without auth header
 		ResponseEntity responseEntity4 =
@@ -213,8 +216,9 @@ public class eCommerceApplicationTests {
 		assertNotNull(responseEntity1);
 		assertEquals(HttpStatus.OK, responseEntity1.getStatusCode());
 		Cart cart = responseEntity1.getBody();
-		assertEquals(4, cart.getItems().size());
-		assertEquals(BigDecimal.valueOf(2.99).multiply(BigDecimal.valueOf(4)), cart.getTotal());
+		assertEquals(1, cart.getLines().size());
+		assertEquals(4, cart.getQuantity(1L));
+		assertEquals(299 * 4, cart.getTotalCents());
 		assertEquals(user.getUsername(), cart.getUser().getUsername());
 
 		// Test remove 3 items from cart with auth header
@@ -224,8 +228,9 @@ public class eCommerceApplicationTests {
 		assertNotNull(responseEntity2);
 		assertEquals(HttpStatus.OK, responseEntity1.getStatusCode());
 		cart = responseEntity2.getBody();
-		assertEquals(1, cart.getItems().size());
-		assertEquals(BigDecimal.valueOf(2.99), cart.getTotal());
+		assertEquals(1, cart.getLines().size());
+		assertEquals(1, cart.getQuantity(1L));
+		assertEquals(299, cart.getTotalCents());
 		assertEquals(user.getUsername(), cart.getUser().getUsername());
 
 		// Test add items to cart without auth header
@@ -266,8 +271,10 @@ public class eCommerceApplicationTests {
 		assertNotNull(responseEntity1);
 		assertEquals(HttpStatus.OK, responseEntity1.getStatusCode());
 		UserOrder order = responseEntity1.getBody();
-		assertEquals(9, order.getItems().size());
-		assertEquals(BigDecimal.valueOf(21.91), order.getTotal());
+		assertEquals(2, order.getLines().size());
+		assertEquals(9, order.getLines().stream().mapToInt(OrderLine::getQuantity).sum());
+		assertEquals(2191, order.getLines().stream().mapToLong(OrderLine::getLineTotalCents).sum());
+		assertEquals(2191, order.getTotalCents());
 		assertEquals(user.getUsername(), order.getUser().getUsername());
 
 		// Empty out cart
@@ -286,12 +293,69 @@ public class eCommerceApplicationTests {
 		testRestTemplate.exchange("http://localhost:" + port + "/api/order/submit/" + user.getUsername(), HttpMethod.POST, request, UserOrder.class);
 
 		// Test get user order history with auth header
-		ResponseEntity<UserOrder[]> responseEntity2 =
-				testRestTemplate.exchange("http://localhost:" + port + "/api/order/history/" + user.getUsername(), HttpMethod.GET, request, UserOrder[].class);
+		ResponseEntity<OrderHistoryPage> responseEntity2 =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/history/" + user.getUsername() + "?limit=1", HttpMethod.GET, request, OrderHistoryPage.class);
 		assertNotNull(responseEntity2);
 		assertEquals(HttpStatus.OK, responseEntity2.getStatusCode());
-		UserOrder[] orders = responseEntity2.getBody();
-		assertEquals(2, orders.length);
+		OrderHistoryPage page = responseEntity2.getBody();
+		assertEquals(1, page.getOrders().size());
+		assertTrue(page.getOrders().get(0).getId() > order.getId());
+		assertNotNull(page.getNextBefore());
+
+		page = testRestTemplate.exchange("http://localhost:" + port + "/api/order/history/" + user.getUsername() + "?limit=1&before=" + page.getNextBefore(),
+				HttpMethod.GET, request, OrderHistoryPage.class).getBody();
+		assertEquals(1, page.getOrders().size());
+		assertEquals(order.getId(), page.getOrders().get(0).getId());
+		assertEquals(2191, page.getOrders().get(0).getTotalCents());
+		assertEquals(2, page.getOrders().get(0).getLineCount());
+
+		// Test get one order's detail with auth header
+		ResponseEntity<UserOrder> detail =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/history/" + user.getUsername() + "/" + order.getId(), HttpMethod.GET, request, UserOrder.class);
+		assertEquals(HttpStatus.OK, detail.getStatusCode());
+		assertEquals(2191, detail.getBody().getTotalCents());
+		assertEquals(2, detail.getBody().getLines().size());
+		assertNull(detail.getBody().getUser().getPassword());
+
+		// Test order stats with auth header, kept up to date by each submit and by a rebuild
+		ResponseEntity<UserOrderStats> stats =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/stats/" + user.getUsername(), HttpMethod.GET, request, UserOrderStats.class);
+		assertEquals(HttpStatus.OK, stats.getStatusCode());
+		assertEquals(2, stats.getBody().getOrderCount());
+		assertNotNull(stats.getBody().getLastOrderAt());
+
+		ResponseEntity<String> rebuildRefused =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/stats/rebuild", HttpMethod.POST, request, String.class);
+		assertEquals(HttpStatus.FORBIDDEN, rebuildRefused.getStatusCode());
+
+		HttpEntity<String> adminRequest = new HttpEntity<>(getHttpWithJwtToken(getLoginTokenForTestUser(user, "ROLE_ADMIN")));
+		ResponseEntity<String> rebuild =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/stats/rebuild", HttpMethod.POST, adminRequest, String.class);
+		assertEquals(HttpStatus.OK, rebuild.getStatusCode());
+		ResponseEntity<UserOrderStats> rebuilt =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/stats/" + user.getUsername(), HttpMethod.GET, request, UserOrderStats.class);
+		assertEquals(stats.getBody().getOrderCount(), rebuilt.getBody().getOrderCount());
+		assertEquals(stats.getBody().getTotalSpentCents(), rebuilt.getBody().getTotalSpentCents());
+
+		// Test order export is refused to a user without the finance or admin role
+		ResponseEntity<String> refused =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/export", HttpMethod.GET, request, String.class);
+		assertEquals(HttpStatus.FORBIDDEN, refused.getStatusCode());
+
+		// Test order export, resuming after the first order
+		HttpEntity<String> financeRequest = new HttpEntity<>(getHttpWithJwtToken(getLoginTokenForTestUser(user, "ROLE_FINANCE")));
+		ResponseEntity<String> ndjson =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/export?afterId=" + (order.getId() - 1), HttpMethod.GET, financeRequest, String.class);
+		assertEquals(HttpStatus.OK, ndjson.getStatusCode());
+		String[] exported = ndjson.getBody().split("\n");
+		assertTrue(exported.length >= 2);
+		assertTrue(exported[0].startsWith("{\"id\":" + order.getId() + ","));
+		assertTrue(exported[0].contains("\"total\":21.91"));
+
+		ResponseEntity<String> csv =
+				testRestTemplate.exchange("http://localhost:" + port + "/api/order/export?format=csv&afterId=" + (order.getId() - 1), HttpMethod.GET, financeRequest, String.class);
+		assertEquals(HttpStatus.OK, csv.getStatusCode());
+		assertTrue(csv.getBody().startsWith("order_id,created_at,username,total,item_id,name,price,quantity\n" + order.getId() + ","));
 
 		// Test create order without auth header
 		ResponseEntity<UserOrder> responseEntity3 =
@@ -315,10 +379,11 @@ public class eCommerceApplicationTests {
 		return testRestTemplate.postForEntity("http://localhost:" + port + "/api/user/create", createUserRequest, User.class).getBody();
 	}
 
-	private String getLoginTokenForTestUser(User user) {
+	private String getLoginTokenForTestUser(User user, String... roles) {
 		return JWT.create()
 				.withSubject(user.getUsername())
 				.withExpiresAt(new Date(System.currentTimeMillis() + SecurityConstants.EXPIRATION_TIME))
+				.withArrayClaim(JwtPrincipal.ROLES_CLAIM, roles)
 				.sign(Algorithm.HMAC512(SecurityConstants.SECRET.getBytes()));
 	}
 
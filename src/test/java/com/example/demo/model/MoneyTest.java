@@ -0,0 +1,52 @@
+package com.example.demo.model;
+
+import com.example.demo.model.persistence.Item;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+public class MoneyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void format_keeps_two_fraction_digits() {
+        assertEquals("2.99", Money.format(299));
+        assertEquals("0.05", Money.format(5));
+        assertEquals("-0.05", Money.format(-5));
+        assertEquals("-1.05", Money.format(-105));
+        assertEquals("10.00", Money.format(1000));
+    }
+
+    @Test
+    public void decimal_conversion_rounds_half_up() {
+        assertEquals(299, Money.fromDecimal(new BigDecimal("2.99")));
+        assertEquals(300, Money.fromDecimal(new BigDecimal("2.995")));
+        assertEquals(299, Money.fromDecimal(new BigDecimal("2.994")));
+        assertEquals(new BigDecimal("21.91"), Money.toDecimal(2191));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void multiplication_overflow_is_an_error() {
+        Money.times(Long.MAX_VALUE / 2, 3);
+    }
+
+    @Test
+    public void json_form_matches_decimal_output() throws Exception {
+        Item item = new Item();
+        item.setId(1L);
+        item.setName("Round Widget");
+        item.setPriceCents(299);
+        item.setDescription("A widget that is round");
+
+        String json = objectMapper.writeValueAsString(item);
+
+        assertEquals("{\"id\":1,\"name\":\"Round Widget\",\"price\":2.99,\"description\":\"A widget that is round\"}", json);
+        assertEquals(299, objectMapper.readValue(json, Item.class).getPriceCents());
+        assertEquals(500, objectMapper.readValue("{\"price\":5}", Item.class).getPriceCents());
+        assertEquals(150, objectMapper.readValue("{\"price\":\"1.50\"}", Item.class).getPriceCents());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.demo.order;
+
+import com.example.demo.TestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OrderExporterTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2024-01-02T03:04:05Z");
+
+    @Test
+    public void csv_fields_are_quoted_only_when_needed() {
+        assertEquals("Round Widget", OrderExporter.csvField("Round Widget"));
+        assertEquals("\"Widget, large\"", OrderExporter.csvField("Widget, large"));
+        assertEquals("\"The \"\"best\"\" widget\"", OrderExporter.csvField("The \"best\" widget"));
+        assertEquals("\"two\nlines\"", OrderExporter.csvField("two\nlines"));
+        assertEquals("", OrderExporter.csvField(null));
+    }
+
+    @Test
+    public void csv_keeps_orders_without_lines() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        ResultSet[] rows = {
+                row(1L, "test", 299, 1L, "Round Widget", 299, 1),
+                row(2L, "test", 0, null, null, 0, 0),
+                row(3L, "test2", 199, 2L, "Square Widget", 199, 1) };
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for(ResultSet row : rows) {
+                handler.processRow(row);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        OrderExporter orderExporter = new OrderExporter();
+        TestUtils.injectObjects(orderExporter, "jdbcTemplate", jdbcTemplate);
+        TestUtils.injectObjects(orderExporter, "objectMapper", new ObjectMapper());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(3, orderExporter.export(out, OrderExporter.Format.CSV, null, null, 0));
+
+        assertEquals("order_id,created_at,username,total,item_id,name,price,quantity\n"
+                        + "1," + CREATED_AT + ",test,2.99,1,Round Widget,2.99,1\n"
+                        + "2," + CREATED_AT + ",test,0.00,,,,\n"
+                        + "3," + CREATED_AT + ",test2,1.99,2,Square Widget,1.99,1\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static ResultSet row(long orderId, String username, long totalCents, Long itemId, String name,
+                                 long unitPriceCents, int quantity) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong(1)).thenReturn(orderId);
+        when(rs.getTimestamp(2)).thenReturn(Timestamp.from(CREATED_AT));
+        when(rs.getString(3)).thenReturn(username);
+        when(rs.getLong(4)).thenReturn(totalCents);
+        // a left join leaves the line columns null for an order without lines
+        when(rs.getLong(5)).thenReturn(itemId == null ? 0L : itemId);
+        when(rs.wasNull()).thenReturn(itemId == null);
+        when(rs.getString(6)).thenReturn(name);
+        when(rs.getLong(7)).thenReturn(unitPriceCents);
+        when(rs.getInt(8)).thenReturn(quantity);
+        return rs;
+    }
+}
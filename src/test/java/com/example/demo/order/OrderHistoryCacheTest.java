@@ -0,0 +1,67 @@
+package com.example.demo.order;
+
+import com.example.demo.TestUtils;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.responses.OrderSummary;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrderHistoryCacheTest {
+
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+
+    private final OrderHistoryCache orderHistoryCache = new OrderHistoryCache(100, 60);
+
+    @Before
+    public void init() {
+        TestUtils.injectObjects(orderHistoryCache, "orderRepository", orderRepository);
+        when(orderRepository.findSummaries(eq(1L), eq(Long.MAX_VALUE), any(Pageable.class))).thenReturn(getTestSummaries(3));
+    }
+
+    @Test
+    public void first_pages_of_any_size_share_one_query() {
+        assertEquals(2, orderHistoryCache.firstPage(1L, 2).size());
+        assertEquals(3, orderHistoryCache.firstPage(1L, 20).size());
+        assertEquals(Long.valueOf(3), orderHistoryCache.firstPage(1L, 1).get(0).getId());
+
+        verify(orderRepository, times(1)).findSummaries(eq(1L), eq(Long.MAX_VALUE), any(Pageable.class));
+        assertEquals(2, orderHistoryCache.getCache().getHits());
+    }
+
+    @Test
+    public void placed_order_drops_the_users_entry() {
+        orderHistoryCache.firstPage(1L, 20);
+
+        orderHistoryCache.onOrderPlaced(new OrderPlacedEvent(1L, 299, Instant.now()));
+        orderHistoryCache.firstPage(1L, 20);
+
+        verify(orderRepository, times(2)).findSummaries(eq(1L), eq(Long.MAX_VALUE), any(Pageable.class));
+    }
+
+    @Test
+    public void pages_deeper_than_the_cache_are_not_served() {
+        assertNull(orderHistoryCache.firstPage(1L, OrderHistoryCache.DEPTH + 1));
+    }
+
+    private List<OrderSummary> getTestSummaries(int count) {
+        List<OrderSummary> summaries = new ArrayList<>();
+        for(long id = count; id > 0; id--) {
+            summaries.add(new OrderSummary(id, Instant.now(), 299, 1));
+        }
+        return summaries;
+    }
+}
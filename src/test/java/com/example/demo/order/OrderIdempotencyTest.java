@@ -0,0 +1,153 @@
+package com.example.demo.order;
+
+import com.example.demo.TestUtils;
+import com.example.demo.model.persistence.UserOrder;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class OrderIdempotencyTest {
+
+    private final OrderIdempotency orderIdempotency = new OrderIdempotency(100, 1);
+
+    // stands in for the order table that replays read from
+    private final Map<Long, UserOrder> orders = new ConcurrentHashMap<>();
+
+    @Test
+    public void concurrent_requests_with_same_key_create_one_order() throws Exception {
+        AtomicInteger submissions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UserOrder order = order(1L);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ResponseEntity<UserOrder>> first = executor.submit(() ->
+                    submit("user", "key", () -> {
+                        submissions.incrementAndGet();
+                        started.countDown();
+                        await(release);
+                        return ResponseEntity.ok(save(order));
+                    }));
+            started.await(5, TimeUnit.SECONDS);
+            Future<ResponseEntity<UserOrder>> second = executor.submit(() ->
+                    submit("user", "key", () -> {
+                        submissions.incrementAndGet();
+                        return ResponseEntity.ok(save(order(2L)));
+                    }));
+            release.countDown();
+
+            assertSame(order, first.get(5, TimeUnit.SECONDS).getBody());
+            assertSame(order, second.get(5, TimeUnit.SECONDS).getBody());
+            assertEquals(1, submissions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void replay_reads_the_order_again() {
+        submit("user", "key", () -> ResponseEntity.ok(save(order(1L))));
+        UserOrder changed = save(order(1L));
+
+        ResponseEntity<UserOrder> replay = submit("user", "key", () -> ResponseEntity.ok(save(order(2L))));
+
+        assertSame(changed, replay.getBody());
+        assertEquals("true", replay.getHeaders().getFirst(OrderIdempotency.REPLAYED_HEADER));
+    }
+
+    @Test
+    public void retry_waiting_too_long_gets_conflict() throws Exception {
+        TestUtils.injectObjects(orderIdempotency, "waitMillis", 50L);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ResponseEntity<UserOrder>> first = executor.submit(() ->
+                    submit("user", "key", () -> {
+                        started.countDown();
+                        await(release);
+                        return ResponseEntity.ok(save(order(1L)));
+                    }));
+            started.await(5, TimeUnit.SECONDS);
+
+            ResponseEntity<UserOrder> retry = submit("user", "key", () -> ResponseEntity.ok(save(order(2L))));
+
+            assertEquals(409, retry.getStatusCodeValue());
+            assertEquals("1", retry.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            release.countDown();
+            assertEquals(Long.valueOf(1), first.get(5, TimeUnit.SECONDS).getBody().getId());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failed_attempt_frees_key() {
+        try {
+            submit("user", "key", () -> {
+                throw new IllegalStateException("boom");
+            });
+        } catch(IllegalStateException expected) {
+            // retried below
+        }
+
+        UserOrder order = order(1L);
+        assertSame(order, submit("user", "key", () -> ResponseEntity.ok(save(order))).getBody());
+    }
+
+    @Test
+    public void keys_are_scoped_per_user() {
+        UserOrder first = order(1L);
+        UserOrder second = order(2L);
+
+        submit("alice", "key", () -> ResponseEntity.ok(save(first)));
+
+        assertSame(second, submit("bob", "key", () -> ResponseEntity.ok(save(second))).getBody());
+    }
+
+    @Test
+    public void error_responses_are_not_remembered() {
+        submit("user", "key", () -> ResponseEntity.notFound().build());
+
+        UserOrder order = order(1L);
+        assertSame(order, submit("user", "key", () -> ResponseEntity.ok(save(order))).getBody());
+    }
+
+    private ResponseEntity<UserOrder> submit(String scope, String key, Supplier<ResponseEntity<UserOrder>> submission) {
+        return orderIdempotency.submit(scope, key, submission, order -> String.valueOf(order.getId()),
+                id -> ResponseEntity.ok(orders.get(Long.valueOf(id))));
+    }
+
+    private UserOrder save(UserOrder order) {
+        orders.put(order.getId(), order);
+        return order;
+    }
+
+    private static UserOrder order(Long id) {
+        UserOrder order = new UserOrder();
+        order.setId(id);
+        return order;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.demo.order;
+
+import com.example.demo.TestUtils;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.UserOrder;
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrderPipelineTest {
+
+    private OrderPipeline orderPipeline;
+
+    private final EntityManager entityManager = mock(EntityManager.class);
+
+    private final Session session = mock(Session.class);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Before
+    public void init() {
+        orderPipeline = new OrderPipeline();
+        TestUtils.injectObjects(orderPipeline, "entityManager", entityManager);
+        TestUtils.injectObjects(orderPipeline, "transactionManager", transactionManager);
+        TestUtils.injectObjects(orderPipeline, "jdbcTemplate", jdbcTemplate);
+        TestUtils.injectObjects(orderPipeline, "enabled", true);
+        TestUtils.injectObjects(orderPipeline, "queueCapacity", 1);
+        TestUtils.injectObjects(orderPipeline, "maxBatch", 10);
+
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(1000L, 1050L);
+    }
+
+    @After
+    public void cleanup() throws InterruptedException {
+        orderPipeline.stop();
+    }
+
+    @Test
+    public void queued_orders_are_written_and_completed() throws Exception {
+        orderPipeline.start();
+
+        OrderSubmission submission = orderPipeline.enqueue(getTestOrder(299));
+
+        assertNotNull(submission);
+        assertEquals(Long.valueOf(1000), submission.getOrderId());
+        awaitOutcome(submission);
+        assertEquals(OrderSubmission.Status.COMPLETED, submission.getStatus());
+        assertEquals(Long.valueOf(1000), submission.getOrderId());
+        verify(session).save(argThat(order -> Long.valueOf(1000).equals(((UserOrder) order).getId())));
+    }
+
+    @Test
+    public void order_ids_are_reserved_in_blocks() {
+        TestUtils.injectObjects(orderPipeline, "queueCapacity", 100);
+        orderPipeline.start();
+
+        UserOrder order = null;
+        for(int i = 0; i < 51; i++) {
+            order = getTestOrder(1);
+            assertNotNull(orderPipeline.enqueue(order));
+        }
+
+        assertEquals(Long.valueOf(1050), order.getId());
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), eq(Long.class));
+    }
+
+    @Test
+    public void failing_order_does_not_fail_its_batch() throws Exception {
+        CountDownLatch inTransaction = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            inTransaction.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+        doThrow(new IllegalStateException("bad order"))
+                .when(session).save(argThat(order -> ((UserOrder) order).getTotalCents() == 13));
+        orderPipeline.start();
+
+        OrderSubmission blocker = orderPipeline.enqueue(getTestOrder(1));
+        inTransaction.await(5, TimeUnit.SECONDS);
+        OrderSubmission bad = orderPipeline.enqueue(getTestOrder(13));
+        assertNull("queue of one is full", orderPipeline.enqueue(getTestOrder(2)));
+        release.countDown();
+
+        awaitOutcome(blocker);
+        awaitOutcome(bad);
+        assertEquals(OrderSubmission.Status.COMPLETED, blocker.getStatus());
+        assertEquals(OrderSubmission.Status.FAILED, bad.getStatus());
+        assertNull(bad.getOrderId());
+    }
+
+    private static void awaitOutcome(OrderSubmission submission) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(submission.getStatus() == OrderSubmission.Status.QUEUED && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private UserOrder getTestOrder(long totalCents) {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("test");
+        UserOrder order = new UserOrder();
+        order.setUser(user);
+        order.setTotalCents(totalCents);
+        return order;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.order;
+
+import com.example.demo.TestUtils;
+import com.example.demo.model.persistence.UserOrderStats;
+import com.example.demo.model.persistence.repositories.UserOrderStatsRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrderStatsTest {
+
+    private final UserOrderStatsRepository statsRepository = mock(UserOrderStatsRepository.class);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    private final OrderStats orderStats = new OrderStats();
+
+    @Before
+    public void init() {
+        TestUtils.injectObjects(orderStats, "statsRepository", statsRepository);
+        TestUtils.injectObjects(orderStats, "jdbcTemplate", jdbcTemplate);
+        TestUtils.injectObjects(orderStats, "transactionManager", mock(PlatformTransactionManager.class));
+    }
+
+    @Test
+    public void first_order_inserts_the_row() {
+        Instant placedAt = Instant.now();
+        when(statsRepository.addOrder(1L, 299, placedAt)).thenReturn(0);
+
+        orderStats.onOrderPlaced(new OrderPlacedEvent(1L, 299, placedAt));
+
+        verify(jdbcTemplate).update(anyString(), eq(1L), eq(299L), eq(Timestamp.from(placedAt)));
+    }
+
+    @Test
+    public void concurrent_first_order_adds_to_the_row_it_lost_to() {
+        Instant placedAt = Instant.now();
+        when(statsRepository.addOrder(1L, 299, placedAt)).thenReturn(0, 1);
+        when(jdbcTemplate.update(anyString(), eq(1L), eq(299L), any(Timestamp.class)))
+                .thenThrow(new DuplicateKeyException("user_order_stats"));
+
+        orderStats.onOrderPlaced(new OrderPlacedEvent(1L, 299, placedAt));
+
+        verify(statsRepository, times(2)).addOrder(1L, 299, placedAt);
+    }
+
+    @Test
+    public void later_orders_update_the_row_in_place() {
+        Instant placedAt = Instant.now();
+        when(statsRepository.addOrder(1L, 299, placedAt)).thenReturn(1);
+
+        orderStats.onOrderPlaced(new OrderPlacedEvent(1L, 299, placedAt));
+
+        verify(jdbcTemplate, never()).update(anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void user_without_orders_has_zero_totals() {
+        UserOrderStats stored = new UserOrderStats(2L);
+        when(statsRepository.findById(1L)).thenReturn(Optional.empty());
+        when(statsRepository.findById(2L)).thenReturn(Optional.of(stored));
+
+        UserOrderStats stats = orderStats.get(1L);
+
+        assertEquals(Long.valueOf(1), stats.getUserId());
+        assertEquals(0, stats.getOrderCount());
+        assertEquals(0, stats.getTotalSpentCents());
+        assertNull(stats.getLastOrderAt());
+        assertSame(stored, orderStats.get(2L));
+    }
+}
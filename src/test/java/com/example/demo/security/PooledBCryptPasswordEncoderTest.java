@@ -0,0 +1,66 @@
+package com.example.demo.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PooledBCryptPasswordEncoderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private PooledBCryptPasswordEncoder encoder;
+
+    @After
+    public void shutdown() {
+        encoder.shutdown();
+    }
+
+    @Test
+    public void encodes_and_matches_on_the_pool() {
+        encoder = new PooledBCryptPasswordEncoder(4, 1, 4, 5000);
+        encoder.bindTo(registry);
+
+        String hash = encoder.encode("testPass");
+
+        assertTrue(hash.startsWith("$2a$04$"));
+        assertTrue(encoder.matches("testPass", hash));
+        assertFalse(encoder.matches("otherPass", hash));
+        assertEquals(1, registry.get("security.password.hash").tag("operation", "encode").timer().count());
+        assertEquals(2, registry.get("security.password.hash").tag("operation", "matches").timer().count());
+        assertEquals(3, registry.get("security.password.queue").timer().count());
+    }
+
+    @Test
+    public void full_queue_is_rejected_right_away() throws Exception {
+        encoder = new PooledBCryptPasswordEncoder(14, 1, 1, 60000);
+        encoder.bindTo(registry);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            // one hash runs, the next one waits in the queue
+            callers.execute(() -> encoder.encode("first"));
+            callers.execute(() -> encoder.encode("second"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while(encoder.getQueueSize() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            try {
+                encoder.encode("third");
+                fail();
+            } catch(PasswordHashingBusyException expected) {
+            }
+            assertEquals(1.0, registry.get("security.password.rejected").counter().count(), 0.0);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.demo.security;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void allows_a_burst_then_the_sustained_rate() {
+        RateLimiter limiter = new RateLimiter("test", 60, 3, 100, now::get);
+
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("b"));
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+        assertEquals(2, limiter.getRejected());
+    }
+
+    @Test
+    public void refilled_buckets_are_evicted() {
+        RateLimiter limiter = new RateLimiter("test", 60, 2, 100, now::get);
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+        limiter.tryAcquire("b");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.evictIdle();
+
+        assertEquals(1, limiter.size());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.evictIdle();
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    public void keys_past_the_limit_share_overflow_buckets_by_stripe() {
+        RateLimiter limiter = new RateLimiter("test", 60, 1, 1, now::get);
+        String sameStripe = keyInStripe(RateLimiter.stripe("b"), "b");
+        String otherStripe = keyInStripe((RateLimiter.stripe("b") + 1) % 64, "b");
+
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertEquals(0, limiter.tryAcquire("b"));
+        assertTrue(limiter.tryAcquire(sameStripe) > 0);
+        // a key on another stripe is not held back by b's traffic
+        assertEquals(0, limiter.tryAcquire(otherStripe));
+        assertEquals(1, limiter.size());
+
+        // once a's bucket refills it is swept to make room
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, limiter.tryAcquire(sameStripe));
+        assertEquals(1, limiter.size());
+    }
+
+    private static String keyInStripe(int stripe, String not) {
+        for(int i = 0; ; i++) {
+            String key = "key-" + i;
+            if(RateLimiter.stripe(key) == stripe && !key.equals(not)) {
+                return key;
+            }
+        }
+    }
+}
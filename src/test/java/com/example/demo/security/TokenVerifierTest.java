@@ -0,0 +1,60 @@
+package com.example.demo.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TokenVerifierTest {
+
+    private final TokenVerifier tokenVerifier = new TokenVerifier(100, 60);
+
+    @Test
+    public void repeated_token_is_verified_once() {
+        String token = JWT.create()
+                .withSubject("test")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60000))
+                .sign(TokenVerifier.ALGORITHM);
+
+        assertEquals("test", tokenVerifier.verify(token).getSubject());
+        assertEquals("test", tokenVerifier.verify(token).getSubject());
+
+        assertEquals(1, tokenVerifier.getCache().getMisses());
+        assertEquals(1, tokenVerifier.getCache().getHits());
+    }
+
+    @Test
+    public void token_signed_with_another_key_is_rejected() {
+        String token = JWT.create()
+                .withSubject("test")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60000))
+                .sign(Algorithm.HMAC512("otherkey".getBytes()));
+
+        assertRejected(token);
+        assertRejected(token);
+        assertEquals(0, tokenVerifier.getCache().size());
+    }
+
+    @Test
+    public void expired_token_is_rejected() {
+        String token = JWT.create()
+                .withSubject("test")
+                .withExpiresAt(new Date(System.currentTimeMillis() - 60000))
+                .sign(TokenVerifier.ALGORITHM);
+
+        assertRejected(token);
+    }
+
+    private void assertRejected(String token) {
+        try {
+            tokenVerifier.verify(token);
+            fail();
+        } catch(JWTVerificationException expected) {
+        }
+    }
+}
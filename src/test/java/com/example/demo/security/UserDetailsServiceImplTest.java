@@ -0,0 +1,78 @@
+package com.example.demo.security;
+
+import com.example.demo.TestUtils;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserDetailsServiceImplTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+
+    private final UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl(100, 60);
+
+    @Before
+    public void init() {
+        TestUtils.injectObjects(userDetailsService, "userRepository", userRepository);
+        Cart cart = new Cart();
+        cart.setId(7L);
+        User user = new User();
+        user.setId(3);
+        user.setUsername("test");
+        user.setPassword("hashed");
+        user.setCart(cart);
+        when(userRepository.findByUsername("test")).thenReturn(user);
+    }
+
+    @Test
+    public void repeated_lookups_hit_the_cache_with_fresh_details() {
+        AccountDetails first = (AccountDetails) userDetailsService.loadUserByUsername("test");
+        ((CredentialsContainer) first).eraseCredentials();
+        AccountDetails second = (AccountDetails) userDetailsService.loadUserByUsername("test");
+
+        assertNotSame(first, second);
+        assertEquals("hashed", second.getPassword());
+        assertEquals(3, second.getUserId());
+        assertEquals(Long.valueOf(7), second.getCartId());
+        verify(userRepository, times(1)).findByUsername("test");
+        assertEquals(1, userDetailsService.getCache().getHits());
+        assertEquals(1, userDetailsService.getCache().getMisses());
+    }
+
+    @Test
+    public void unknown_users_are_not_cached() {
+        assertNotFound("nobody");
+        assertNotFound("nobody");
+
+        verify(userRepository, times(2)).findByUsername("nobody");
+    }
+
+    @Test
+    public void changed_users_are_loaded_again() {
+        userDetailsService.loadUserByUsername("test");
+        userDetailsService.onUserChanged(new UserChangedEvent("test", false));
+        userDetailsService.loadUserByUsername("test");
+
+        verify(userRepository, times(2)).findByUsername("test");
+    }
+
+    private void assertNotFound(String username) {
+        try {
+            userDetailsService.loadUserByUsername(username);
+            fail();
+        } catch(UsernameNotFoundException expected) {
+        }
+    }
+}